@@ -0,0 +1,96 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import static enigma.Machines.*;
+
+/** Throughput of Machine conversions, in characters per second, for
+ *  machines of various sizes, with and without ring settings, and with
+ *  and without a keystream cache.
+ *  @author Bryan Lim
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MachineBenchmark {
+
+    /** Number of rotor slots, including the reflector. */
+    @Param({"3", "5", "10"})
+    public int rotors;
+
+    /** True iff the rotors have ring settings other than 0, which
+     *  should cost nothing. */
+    @Param({"false", "true"})
+    public boolean rings;
+
+    /** Machine under test. */
+    private Machine _machine;
+
+    /** A copy of _machine with a keystream cache. */
+    private Machine _cached;
+
+    /** Message to convert. */
+    private int[] _message;
+
+    /** Buffer for batch conversions. */
+    private int[] _buffer;
+
+    /** Build the machine. */
+    @Setup
+    public void setUp() {
+        _machine = configured(rotors);
+        if (rings) {
+            _machine.setRings(ringSetting(rotors));
+        }
+        _cached = _machine.copy();
+        _cached.setKeystreamCache(new KeystreamCache(KEYSTREAM_BUDGET));
+        _message = randomIndices(LENGTH);
+        _buffer = new int[LENGTH];
+    }
+
+    /** Convert the message a character at a time. */
+    @Benchmark
+    @OperationsPerInvocation(LENGTH)
+    public int convertEach() {
+        int sum = 0;
+        for (int c : _message) {
+            sum += _machine.convert(c);
+        }
+        return sum;
+    }
+
+    /** Convert the message with a single batch conversion. */
+    @Benchmark
+    @OperationsPerInvocation(LENGTH)
+    public int[] convertBatch() {
+        System.arraycopy(_message, 0, _buffer, 0, LENGTH);
+        _machine.convert(_buffer, 0, LENGTH);
+        return _buffer;
+    }
+
+    /** Convert the message with a single batch conversion through a
+     *  keystream, where the period is short enough to cache one. */
+    @Benchmark
+    @OperationsPerInvocation(LENGTH)
+    public int[] convertKeystream() {
+        System.arraycopy(_message, 0, _buffer, 0, LENGTH);
+        _cached.convert(_buffer, 0, LENGTH);
+        return _buffer;
+    }
+
+    /** Budget of the keystream cache, in bytes. */
+    private static final long KEYSTREAM_BUDGET = 64 << 20;
+
+    /** Number of characters converted per invocation. */
+    private static final int LENGTH = 1 << 16;
+}
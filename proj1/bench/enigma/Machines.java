@@ -0,0 +1,250 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/** Machines, messages and inputs shared by the enigma benchmarks.  All
+ *  of them are generated from fixed seeds so that runs are comparable.
+ *  @author Bryan Lim
+ */
+final class Machines {
+
+    /** Not instantiable. */
+    private Machines() {
+    }
+
+    /** The upper-case alphabet. */
+    static final Alphabet UPPER = new UpperCaseAlphabet();
+
+    /** The letters of UPPER, in order. */
+    static final String LETTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    /** The naval reflector B. */
+    static final String REFLECTOR_B =
+        "(AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) (RX) (SZ) (TV)";
+
+    /** The first character of the alphabets returned by symbols(). */
+    static final char FIRST_SYMBOL = '\u0100';
+
+    /** Return a random permutation of UPPER, in cycle notation, having
+     *  CYCLES cycles (1 <= CYCLES <= 26), drawn using RANDOM. */
+    static String randomCycles(int cycles, Random random) {
+        List<Character> letters = new ArrayList<>();
+        for (char c : LETTERS.toCharArray()) {
+            letters.add(c);
+        }
+        Collections.shuffle(letters, random);
+        List<Integer> cuts = new ArrayList<>();
+        for (int i = 1; i < LETTERS.length(); i += 1) {
+            cuts.add(i);
+        }
+        Collections.shuffle(cuts, random);
+        cuts = new ArrayList<>(cuts.subList(0, cycles - 1));
+        cuts.add(LETTERS.length());
+        Collections.sort(cuts);
+        StringBuilder result = new StringBuilder();
+        int start = 0;
+        for (int cut : cuts) {
+            result.append('(');
+            for (int i = start; i < cut; i += 1) {
+                result.append(letters.get(i));
+            }
+            result.append(") ");
+            start = cut;
+        }
+        return result.toString();
+    }
+
+    /** Return the names of the rotors of a machine with NUMROTORS slots
+     *  built by machine(NUMROTORS), reflector first. */
+    static String[] rotorNames(int numRotors) {
+        String[] names = new String[numRotors];
+        names[0] = "B";
+        for (int i = 1; i < numRotors; i += 1) {
+            names[i] = "R" + i;
+        }
+        return names;
+    }
+
+    /** Return an unconfigured machine with NUMROTORS slots, one fixed
+     *  rotor, and NUMROTORS - 2 moving rotors whose notches are at
+     *  "Q" and (for every third rotor) "Z". */
+    static Machine machine(int numRotors) {
+        Random random = new Random(numRotors);
+        Collection<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(REFLECTOR_B, UPPER)));
+        for (int i = 1; i < numRotors; i += 1) {
+            Permutation perm =
+                new Permutation(randomCycles(1 + random.nextInt(4), random),
+                                UPPER);
+            if (i == 1) {
+                rotors.add(new FixedRotor("R" + i, perm));
+            } else {
+                rotors.add(new MovingRotor("R" + i, perm,
+                                           i % 3 == 0 ? "QZ" : "Q"));
+            }
+        }
+        return new Machine(UPPER, numRotors, numRotors - 2, rotors);
+    }
+
+    /** Return an alphabet of SYMBOLS characters, the first being
+     *  FIRST_SYMBOL and the rest following it in order. */
+    static Alphabet symbols(int symbols) {
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < symbols; i += 1) {
+            chars.append((char) (FIRST_SYMBOL + i));
+        }
+        return new Alphabet(chars.toString());
+    }
+
+    /** Return a random permutation of 0 .. SIZE-1, drawn using RANDOM. */
+    static int[] randomMapping(int size, Random random) {
+        List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < size; i += 1) {
+            indices.add(i);
+        }
+        Collections.shuffle(indices, random);
+        int[] result = new int[size];
+        for (int i = 0; i < size; i += 1) {
+            result[i] = indices.get(i);
+        }
+        return result;
+    }
+
+    /** Return an unconfigured machine over ALPHABET, with the slots and
+     *  rotor names of machine(NUMROTORS).  Its rotors are random, each
+     *  moving rotor has a notch at the first character of ALPHABET, and
+     *  its reflector pairs the characters at random, leaving one
+     *  unpaired if ALPHABET's size is odd. */
+    static Machine machine(int numRotors, Alphabet alphabet) {
+        Random random = new Random(numRotors);
+        int size = alphabet.size();
+        int[] order = randomMapping(size, random);
+        int[] reflection = new int[size];
+        for (int i = 0; i < size; i += 1) {
+            reflection[i] = i;
+        }
+        for (int i = 0; i + 1 < size; i += 2) {
+            reflection[order[i]] = order[i + 1];
+            reflection[order[i + 1]] = order[i];
+        }
+        String notch = String.valueOf(alphabet.toChar(0));
+        Collection<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(reflection,
+                                                      alphabet)));
+        for (int i = 1; i < numRotors; i += 1) {
+            Permutation perm =
+                new Permutation(randomMapping(size, random), alphabet);
+            if (i == 1) {
+                rotors.add(new FixedRotor("R" + i, perm));
+            } else {
+                rotors.add(new MovingRotor("R" + i, perm, notch));
+            }
+        }
+        return new Machine(alphabet, numRotors, numRotors - 2, rotors);
+    }
+
+    /** Return a random setting of the NUMROTORS - 1 rotors after the
+     *  reflector of a machine over ALPHABET, drawn using RANDOM. */
+    static String randomSetting(int numRotors, Alphabet alphabet,
+                                Random random) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 1; i < numRotors; i += 1) {
+            result.append(alphabet.toChar(random.nextInt(alphabet.size())));
+        }
+        return result.toString();
+    }
+
+    /** Return a machine built by machine(NUMROTORS), with its rotors
+     *  inserted at setting "A..A" and a five-pair plugboard. */
+    static Machine configured(int numRotors) {
+        Machine result = machine(numRotors);
+        result.insertRotors(rotorNames(numRotors));
+        result.setRotors(initialSetting(numRotors));
+        result.setPlugboard(new Permutation("(AQ) (EP) (HX) (TR) (BY)",
+                                            UPPER));
+        return result;
+    }
+
+    /** Return the all-'A' setting for a machine with NUMROTORS slots. */
+    static String initialSetting(int numRotors) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 1; i < numRotors; i += 1) {
+            result.append('A');
+        }
+        return result.toString();
+    }
+
+    /** Return a ring setting for a machine with NUMROTORS slots in which
+     *  no slot's ring setting is 0: "BCD...". */
+    static String ringSetting(int numRotors) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 1; i < numRotors; i += 1) {
+            result.append(LETTERS.charAt(i % LETTERS.length()));
+        }
+        return result.toString();
+    }
+
+    /** Return LENGTH random indices into UPPER. */
+    static int[] randomIndices(int length) {
+        return randomIndices(length, LETTERS.length());
+    }
+
+    /** Return LENGTH random indices into an alphabet of SIZE
+     *  characters. */
+    static int[] randomIndices(int length, int size) {
+        Random random = new Random(length);
+        int[] result = new int[length];
+        for (int i = 0; i < length; i += 1) {
+            result[i] = random.nextInt(size);
+        }
+        return result;
+    }
+
+    /** Return a configuration file's text for the rotors of
+     *  machine(NUMROTORS). */
+    static String configText(int numRotors) {
+        Machine machine = machine(numRotors);
+        Random random = new Random(numRotors);
+        StringBuilder result = new StringBuilder(LETTERS);
+        result.append(String.format("%n%d %d%n", numRotors, numRotors - 2));
+        result.append(String.format(" B R %s%n", REFLECTOR_B));
+        for (int i = 1; i < numRotors; i += 1) {
+            String cycles = randomCycles(1 + random.nextInt(4), random);
+            String kind = i == 1 ? "N" : i % 3 == 0 ? "MQZ" : "MQ";
+            result.append(String.format(" R%d %s %s%n", i, kind, cycles));
+        }
+        return result.toString();
+    }
+
+    /** Return an input file's text for a machine with NUMROTORS slots,
+     *  holding MESSAGES messages, each of LINES lines of about WIDTH
+     *  letters in groups of five.  Each message has its own key. */
+    static String inputText(int numRotors, int messages, int lines,
+                            int width) {
+        Random random = new Random(messages);
+        StringBuilder result = new StringBuilder();
+        String rotors = String.join(" ", rotorNames(numRotors));
+        for (int m = 0; m < messages; m += 1) {
+            result.append("* ").append(rotors).append(' ');
+            for (int i = 1; i < numRotors; i += 1) {
+                result.append(LETTERS.charAt(random.nextInt(26)));
+            }
+            result.append(" (AQ) (EP)\n");
+            for (int l = 0; l < lines; l += 1) {
+                for (int i = 0; i < width; i += 1) {
+                    if (i % 6 == 5) {
+                        result.append(' ');
+                    } else {
+                        result.append(LETTERS.charAt(random.nextInt(26)));
+                    }
+                }
+                result.append('\n');
+            }
+        }
+        return result.toString();
+    }
+}
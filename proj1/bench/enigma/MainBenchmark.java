@@ -0,0 +1,77 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import static enigma.Machines.*;
+
+/** End-to-end time for Main to process a generated input of several
+ *  megabytes from a file to a file, in each of its modes.
+ *  @author Bryan Lim
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MainBenchmark {
+
+    /** Options passed to Main. */
+    @Param({"", "--mmap", "--parallel"})
+    public String options;
+
+    /** Configuration, input and output files. */
+    private File _config, _input, _output;
+
+    /** Write the configuration and input files. */
+    @Setup
+    public void setUp() throws IOException {
+        _config = File.createTempFile("enigma", ".conf");
+        _input = File.createTempFile("enigma", ".inp");
+        _output = File.createTempFile("enigma", ".out");
+        Files.write(_config.toPath(), configText(ROTORS).getBytes());
+        Files.write(_input.toPath(),
+                    inputText(ROTORS, MESSAGES, LINES, WIDTH).getBytes());
+    }
+
+    /** Remove the files. */
+    @TearDown
+    public void tearDown() {
+        _config.delete();
+        _input.delete();
+        _output.delete();
+    }
+
+    /** Run Main over the input. */
+    @Benchmark
+    public void main() {
+        if (options.isEmpty()) {
+            Main.main(_config.getPath(), _input.getPath(), _output.getPath());
+        } else {
+            Main.main(options, _config.getPath(), _input.getPath(),
+                      _output.getPath());
+        }
+    }
+
+    /** Number of rotor slots in the machine. */
+    private static final int ROTORS = 5;
+
+    /** Number of messages in the input. */
+    private static final int MESSAGES = 40;
+
+    /** Lines per message. */
+    private static final int LINES = 1000;
+
+    /** Characters per line. */
+    private static final int WIDTH = 120;
+}
@@ -0,0 +1,75 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import static enigma.Machines.*;
+
+/** Cost of Permutation.permute and invert, by number of cycles.
+ *  @author Bryan Lim
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PermutationBenchmark {
+
+    /** Number of cycles in the permutation. */
+    @Param({"1", "4", "13", "26"})
+    public int cycles;
+
+    /** Permutation under test. */
+    private Permutation _perm;
+
+    /** Indices to permute. */
+    private int[] _indices;
+
+    /** Build the permutation. */
+    @Setup
+    public void setUp() {
+        _perm = new Permutation(randomCycles(cycles, new Random(cycles)),
+                                UPPER);
+        _indices = randomIndices(INDICES);
+    }
+
+    /** Permute each of the indices. */
+    @Benchmark
+    @OperationsPerInvocation(INDICES)
+    public int permute() {
+        int sum = 0;
+        for (int p : _indices) {
+            sum += _perm.permute(p);
+        }
+        return sum;
+    }
+
+    /** Invert each of the indices. */
+    @Benchmark
+    @OperationsPerInvocation(INDICES)
+    public int invert() {
+        int sum = 0;
+        for (int p : _indices) {
+            sum += _perm.invert(p);
+        }
+        return sum;
+    }
+
+    /** Parse the permutation's cycle notation. */
+    @Benchmark
+    public Permutation parse() {
+        return new Permutation(randomCycles(cycles, new Random(cycles)),
+                               UPPER);
+    }
+
+    /** Number of indices permuted per invocation. */
+    private static final int INDICES = 1024;
+}
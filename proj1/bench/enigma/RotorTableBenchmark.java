@@ -0,0 +1,81 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import static enigma.Machines.*;
+
+/** Throughput of Machine conversions, in characters per second, on either
+ *  side of Rotor.MAX_TABLE_SIZE: a machine over 256 symbols converts
+ *  through its rotors' precomputed tables, one over 257 through the
+ *  rotors' own wrap arithmetic.  The rotors have random settings and
+ *  ring settings.
+ *  @author Bryan Lim
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RotorTableBenchmark {
+
+    /** Number of characters in the alphabet. */
+    @Param({"26", "256", "257"})
+    public int symbols;
+
+    /** Machine under test. */
+    private Machine _machine;
+
+    /** Message to convert. */
+    private int[] _message;
+
+    /** Buffer for batch conversions. */
+    private int[] _buffer;
+
+    /** Build the machine. */
+    @Setup
+    public void setUp() {
+        Alphabet alphabet = symbols(symbols);
+        Random random = new Random(symbols);
+        _machine = machine(ROTORS, alphabet);
+        _machine.insertRotors(rotorNames(ROTORS));
+        _machine.setRotors(randomSetting(ROTORS, alphabet, random));
+        _machine.setRings(randomSetting(ROTORS, alphabet, random));
+        _message = randomIndices(LENGTH, symbols);
+        _buffer = new int[LENGTH];
+    }
+
+    /** Convert the message a character at a time. */
+    @Benchmark
+    @OperationsPerInvocation(LENGTH)
+    public int convertEach() {
+        int sum = 0;
+        for (int c : _message) {
+            sum += _machine.convert(c);
+        }
+        return sum;
+    }
+
+    /** Convert the message with a single batch conversion. */
+    @Benchmark
+    @OperationsPerInvocation(LENGTH)
+    public int[] convertBatch() {
+        System.arraycopy(_message, 0, _buffer, 0, LENGTH);
+        _machine.convert(_buffer, 0, LENGTH);
+        return _buffer;
+    }
+
+    /** Number of rotor slots, including the reflector. */
+    private static final int ROTORS = 5;
+
+    /** Number of characters converted per invocation. */
+    private static final int LENGTH = 1 << 16;
+}
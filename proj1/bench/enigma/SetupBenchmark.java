@@ -0,0 +1,62 @@
+package enigma;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import static enigma.Machines.*;
+
+/** Cost of each settings ('*') line, measured on input consisting of
+ *  short messages that each have their own key.
+ *  @author Bryan Lim
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SetupBenchmark {
+
+    /** Number of rotor slots, including the reflector. */
+    @Param({"5", "10"})
+    public int rotors;
+
+    /** Machine to configure. */
+    private Machine _machine;
+
+    /** Input: MESSAGES settings lines, each followed by one short line. */
+    private char[] _input;
+
+    /** Build the machine and input. */
+    @Setup
+    public void setUp() {
+        _machine = machine(rotors);
+        _input = inputText(rotors, MESSAGES, 1, MESSAGE_WIDTH).toCharArray();
+    }
+
+    /** Process the input; the result is the cost per message. */
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public CharArrayWriter process() throws IOException {
+        CharArrayWriter output = new CharArrayWriter(_input.length);
+        MessageProcessor processor =
+            new MessageProcessor(_machine, UPPER, output);
+        processor.process(_input, 0, _input.length);
+        processor.finish();
+        return output;
+    }
+
+    /** Number of messages in the input. */
+    private static final int MESSAGES = 1000;
+
+    /** Width of each message line. */
+    private static final int MESSAGE_WIDTH = 12;
+}
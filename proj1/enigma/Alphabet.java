@@ -1,39 +1,94 @@
 package enigma;
 
-import static enigma.EnigmaException.*;
+import java.util.Arrays;
 
-/* Extra Credit Only */
+import static enigma.EnigmaException.*;
 
 /** An alphabet of encodable characters.  Provides a mapping from characters
- *  to and from indices into the alphabet.
+ *  to and from indices into the alphabet.  Both directions are single
+ *  table lookups: characters are found through a table indexed by
+ *  character that is just large enough to hold the largest character of
+ *  the alphabet.
  *  @author Bryan Lim
  */
 class Alphabet {
 
     /** A new alphabet containing CHARS.  Character number #k has index
-     *  K (numbering from 0). No character may be duplicated. */
+     *  K (numbering from 0). No character may be duplicated, and none may
+     *  be whitespace or one of the characters "*()", which are reserved
+     *  for configuration and settings lines. */
     Alphabet(String chars) {
+        if (chars.isEmpty()) {
+            throw error("empty alphabet");
+        }
+        _chars = chars.toCharArray();
+        char max = 0;
+        for (char c : _chars) {
+            max = (char) Math.max(max, c);
+        }
+        _index = new int[max + 1];
+        Arrays.fill(_index, -1);
+        for (int i = 0; i < _chars.length; i += 1) {
+            char c = _chars[i];
+            if (Character.isWhitespace(c) || RESERVED.indexOf(c) >= 0) {
+                throw error("character '%c' may not be in an alphabet", c);
+            }
+            if (_index[c] >= 0) {
+                throw error("character '%c' appears twice in alphabet", c);
+            }
+            _index[c] = i;
+        }
+    }
+
+    /** Return an alphabet containing CHARS, as for new Alphabet(CHARS).
+     *  The upper-case letters in order give an UpperCaseAlphabet. */
+    static Alphabet of(String chars) {
+        if (chars.equals(UpperCaseAlphabet.LETTERS)) {
+            return new UpperCaseAlphabet();
+        }
+        return new Alphabet(chars);
     }
 
     /** Returns the size of the alphabet. */
     int size() {
-        return 0;
+        return _chars.length;
     }
 
     /** Returns true if C is in this alphabet. */
     boolean contains(char c) {
-        return false;
+        return c < _index.length && _index[c] >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
      *  0 <= INDEX < size(). */
     char toChar(int index) {
-        return 'A';
+        if (index < 0 || index >= _chars.length) {
+            throw error("character index out of range");
+        }
+        return _chars[index];
     }
 
     /** Returns the index of character C, which must be in the alphabet. */
     int toInt(char c) {
-        return 0;
+        if (!contains(c)) {
+            throw error("character '%c' not in alphabet", c);
+        }
+        return _index[c];
     }
 
+    /** Returns the characters of this alphabet, in order. */
+    @Override
+    public String toString() {
+        return new String(_chars);
+    }
+
+    /** Characters that may not appear in an alphabet. */
+    private static final String RESERVED = "*()";
+
+    /** My characters, in order. */
+    private final char[] _chars;
+
+    /** The index of each character C < _index.length, or -1 if C is not
+     *  in this alphabet. */
+    private final int[] _index;
 }
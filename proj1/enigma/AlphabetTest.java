@@ -0,0 +1,55 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Alphabet class.
+ *  @author Bryan Lim
+ */
+public class AlphabetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void mixedAlphabet() {
+        String chars = "abcXYZ019.,?\u00e9\u4e2d";
+        Alphabet alpha = new Alphabet(chars);
+        assertEquals(chars.length(), alpha.size());
+        for (int i = 0; i < chars.length(); i += 1) {
+            char c = chars.charAt(i);
+            assertTrue(alpha.contains(c));
+            assertEquals(i, alpha.toInt(c));
+            assertEquals(c, alpha.toChar(i));
+        }
+        assertFalse(alpha.contains('A'));
+        assertFalse(alpha.contains('\u4e2e'));
+        assertEquals(chars, alpha.toString());
+    }
+
+    @Test
+    public void upperCaseIsSpecial() {
+        assertTrue(Alphabet.of(UpperCaseAlphabet.LETTERS)
+                   instanceof UpperCaseAlphabet);
+        assertFalse(Alphabet.of("ABC") instanceof UpperCaseAlphabet);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void duplicateCharacter() {
+        new Alphabet("ABCA");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void reservedCharacter() {
+        new Alphabet("AB(C");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void missingCharacter() {
+        new Alphabet("ABC").toInt('D');
+    }
+
+}
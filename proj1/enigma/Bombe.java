@@ -0,0 +1,307 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.EnigmaException.*;
+
+/** A simulation of the Turing-Welchman bombe, which finds rotor orders
+ *  and settings consistent with a crib without knowing the plugboard.
+ *
+ *  If the plugboard is S and the rotors alone convert with the
+ *  involution E_i at position i of the crib, then plaintext P_i and
+ *  ciphertext C_i satisfy S(C_i) = E_i(S(P_i)).  (E_i is an involution
+ *  because the reflector is; a machine with a reflector that is not its
+ *  own inverse is rejected.)  The crib thus gives a
+ *  menu: a graph whose vertices are characters and which has an edge
+ *  labeled i between P_i and C_i.  A hypothesis S(A) = V, for A on the
+ *  menu, implies S(B) = E_i(V) for every edge (A, B, i), and (the
+ *  "diagonal board") S(V) = A, since S is an involution.
+ *
+ *  For each key, the bombe hypothesizes a value for S at the menu's
+ *  most connected character (the test register) and lights everything
+ *  the hypothesis implies.  A true hypothesis lights a consistent set:
+ *  no character gets two values.  A false one usually lights every value
+ *  of the test register, which rules the key out; otherwise, since the
+ *  implications are reversible, the true value is among the unlit ones,
+ *  and each is tried in turn.  A key at which some hypothesis is
+ *  consistent is a stop, and is reported with the plugboard pairs that
+ *  hypothesis implies.
+ *
+ *  The hypotheses lit so far are kept as a packed bit set with a bit for
+ *  each (character, value) pair.  Ranges of keys (see KeySpace) are
+ *  split across a fork-join pool; each task has its own machine, tables
+ *  and bit set, and allocates nothing per key except for the stops it
+ *  reports.
+ *  @author Bryan Lim
+ */
+class Bombe {
+
+    /** A bombe for the rotor orders and settings of MACHINE, run on
+     *  POOL.  Every reflector available to MACHINE must be its own
+     *  inverse. */
+    Bombe(Machine machine, ForkJoinPool pool) {
+        for (Rotor rotor : machine.availableRotors()) {
+            if (rotor.reflecting() && !involution(rotor.permutation())) {
+                throw error("reflector %s is not an involution",
+                            rotor.name());
+            }
+        }
+        _prototype = machine.copy();
+        _prototype.setPlugboard(new Permutation("", machine.alphabet()));
+        _alphabet = machine.alphabet();
+        _pool = pool;
+        _keys = new KeySpace(machine);
+    }
+
+    /** Return the stops for the crib CRIB lined up with CIPHER starting
+     *  at index OFFSET, in order.  Each stop is given as a settings line
+     *  without its leading '*': the names of the rotors, their setting,
+     *  and the plugboard pairs implied for the characters on the menu. */
+    List<String> run(String crib, String cipher, int offset) {
+        if (offset < 0 || offset + crib.length() > cipher.length()) {
+            throw error("crib does not fit in the ciphertext at %d", offset);
+        }
+        if (crib.isEmpty()) {
+            throw error("empty crib");
+        }
+        Menu menu = new Menu(crib, cipher.substring(offset,
+                                                    offset + crib.length()));
+        return _pool.invoke(new Range(menu, offset, 0, _keys.size()));
+    }
+
+    /** The graph of a crib: for each character, the characters it is
+     *  paired with and the positions at which they are. */
+    private class Menu {
+
+        /** The menu of the crib PLAIN lined up with ciphertext CODED. */
+        Menu(String plain, String coded) {
+            int n = _alphabet.size();
+            int[] degree = new int[n];
+            int[] from = new int[plain.length()], to = new int[from.length];
+            for (int i = 0; i < from.length; i += 1) {
+                from[i] = _alphabet.toInt(plain.charAt(i));
+                to[i] = _alphabet.toInt(coded.charAt(i));
+                degree[from[i]] += 1;
+                degree[to[i]] += 1;
+            }
+            neighbors = new int[n][];
+            positions = new int[n][];
+            int test = 0;
+            for (int c = 0; c < n; c += 1) {
+                neighbors[c] = new int[degree[c]];
+                positions[c] = new int[degree[c]];
+                if (degree[c] > degree[test]) {
+                    test = c;
+                }
+                degree[c] = 0;
+            }
+            for (int i = 0; i < from.length; i += 1) {
+                addEdge(from[i], to[i], i, degree);
+                addEdge(to[i], from[i], i, degree);
+            }
+            testRegister = test;
+            length = from.length;
+        }
+
+        /** Add an edge from A to B at position I, where A already has
+         *  DEGREE[A] edges. */
+        private void addEdge(int a, int b, int i, int[] degree) {
+            neighbors[a][degree[a]] = b;
+            positions[a][degree[a]] = i;
+            degree[a] += 1;
+        }
+
+        /** For each character, the characters it is joined to. */
+        final int[][] neighbors;
+        /** For each character, the crib positions of its edges. */
+        final int[][] positions;
+        /** The character whose hypotheses are tested. */
+        final int testRegister;
+        /** Number of characters in the crib. */
+        final int length;
+    }
+
+    /** Runs the bombe over a range of keys. */
+    private class Range extends KeySpace.Task<List<String>> {
+
+        /** Try the keys in [LO, HI) against MENU, whose crib begins OFFSET
+         *  characters into the message. */
+        Range(Menu menu, int offset, long lo, long hi) {
+            super(lo, hi, GRAIN);
+            _menu = menu;
+            _offset = offset;
+        }
+
+        @Override
+        Range part(long lo, long hi) {
+            return new Range(_menu, _offset, lo, hi);
+        }
+
+        @Override
+        List<String> merge(List<String> left, List<String> right) {
+            return KeySpace.concat(left, right);
+        }
+
+        /** Try each of the keys in [LO, HI) in turn and return the
+         *  stops. */
+        @Override
+        List<String> tryKeys(long lo, long hi) {
+            int n = _alphabet.size();
+            List<String> result = new ArrayList<String>();
+            Machine machine = _prototype.copy();
+            _tables = new int[_menu.length][n];
+            _lit = new long[(n * n + Long.SIZE - 1) / Long.SIZE];
+            _firstLit = new long[_lit.length];
+            _counts = new int[n];
+            _queue = new int[n * n];
+            int[] setting = new int[machine.numRotors() - 1];
+            int order = -1;
+            for (long key = lo; key < hi; key += 1) {
+                order = _keys.set(machine, key, order, setting);
+                machine.skip(_offset);
+                for (int i = 0; i < _menu.length; i += 1) {
+                    machine.press(_tables[i]);
+                }
+                int value = test();
+                if (value >= 0) {
+                    light(_menu.testRegister, value, true);
+                    result.add(describe(order, setting));
+                }
+            }
+            return result;
+        }
+
+        /** Return a value for the test register that is consistent at the
+         *  current key, or -1 if there is none. */
+        private int test() {
+            int n = _alphabet.size(), t = _menu.testRegister;
+            if (light(t, 0, false)) {
+                return 0;
+            }
+            if (_counts[t] == n) {
+                return -1;
+            }
+            System.arraycopy(_lit, 0, _firstLit, 0, _lit.length);
+            for (int v = 1; v < n; v += 1) {
+                if (!isLit(_firstLit, t * n + v) && light(t, v, true)) {
+                    return v;
+                }
+            }
+            return -1;
+        }
+
+        /** Clear all hypotheses, then light S(A) = V and everything it
+         *  implies.  Return true iff the result is consistent.  If
+         *  STOPEARLY, give up as soon as it is not. */
+        private boolean light(int a, int v, boolean stopEarly) {
+            int n = _alphabet.size(), t = _menu.testRegister;
+            Arrays.fill(_lit, 0);
+            Arrays.fill(_counts, 0);
+            _consistent = true;
+            _queueLength = 0;
+            set(a, v);
+            for (int head = 0; head < _queueLength; head += 1) {
+                if (stopEarly && !_consistent || _counts[t] == n) {
+                    break;
+                }
+                int b = _queue[head] / n, w = _queue[head] % n;
+                int[] neighbors = _menu.neighbors[b];
+                int[] positions = _menu.positions[b];
+                for (int k = 0; k < neighbors.length; k += 1) {
+                    set(neighbors[k], _tables[positions[k]][w]);
+                }
+            }
+            return _consistent;
+        }
+
+        /** Light S(A) = V and S(V) = A, queueing whichever were not
+         *  already lit. */
+        private void set(int a, int v) {
+            mark(a, v);
+            mark(v, a);
+        }
+
+        /** Light S(A) = V, queueing it if it was not already lit. */
+        private void mark(int a, int v) {
+            int bit = a * _alphabet.size() + v;
+            if (isLit(_lit, bit)) {
+                return;
+            }
+            _lit[bit / Long.SIZE] |= 1L << (bit % Long.SIZE);
+            _counts[a] += 1;
+            if (_counts[a] > 1) {
+                _consistent = false;
+            }
+            _queue[_queueLength] = bit;
+            _queueLength += 1;
+        }
+
+        /** Return a settings line (without '*') for rotor order ORDER at
+         *  SETTING and the plugboard pairs currently lit. */
+        private String describe(int order, int[] setting) {
+            int n = _alphabet.size();
+            StringBuilder result = _keys.describe(order, setting);
+            for (int a = 0; a < n; a += 1) {
+                for (int v = a + 1; v < n; v += 1) {
+                    if (isLit(_lit, a * n + v)) {
+                        result.append(" (").append(_alphabet.toChar(a))
+                            .append(_alphabet.toChar(v)).append(')');
+                    }
+                }
+            }
+            return result.toString();
+        }
+
+        /** The menu being run. */
+        private final Menu _menu;
+        /** Number of characters of the message preceding the crib. */
+        private final int _offset;
+        /** The conversion by the rotors alone at each crib position. */
+        private int[][] _tables;
+        /** Bit A * size + V is set iff S(A) = V is lit. */
+        private long[] _lit;
+        /** The hypotheses lit by the first hypothesis tested. */
+        private long[] _firstLit;
+        /** Number of values lit for each character. */
+        private int[] _counts;
+        /** Lit hypotheses whose implications are still to be lit. */
+        private int[] _queue;
+        /** Number of entries in _queue. */
+        private int _queueLength;
+        /** True iff no character has more than one value lit. */
+        private boolean _consistent;
+    }
+
+    /** Return true iff PERM is its own inverse. */
+    private static boolean involution(Permutation perm) {
+        for (int c = 0; c < perm.size(); c += 1) {
+            if (perm.permute(perm.permute(c)) != c) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return true iff bit BIT of BITS is set. */
+    private static boolean isLit(long[] bits, int bit) {
+        return (bits[bit / Long.SIZE] & (1L << (bit % Long.SIZE))) != 0;
+    }
+
+    /** Largest number of keys tried by a single task. */
+    private static final int GRAIN = 1 << 12;
+
+    /** Machine copied by each task. */
+    private final Machine _prototype;
+
+    /** Alphabet of _prototype. */
+    private final Alphabet _alphabet;
+
+    /** Pool on which keys are tried. */
+    private final ForkJoinPool _pool;
+
+    /** Keys to try. */
+    private final KeySpace _keys;
+}
@@ -0,0 +1,77 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Bombe class.
+ *  @author Bryan Lim
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return a three-slot, two-pawl machine with the naval rotors I-IV
+     *  and reflectors B and C. */
+    private Machine smallMachine() {
+        Collection<Rotor> rotors = new ArrayList<Rotor>();
+        String[] notches = {"Q", "E", "V", "J"};
+        String[] names = {"I", "II", "III", "IV"};
+        for (int i = 0; i < names.length; i++) {
+            rotors.add(new MovingRotor(names[i],
+                new Permutation(NAVALA.get(names[i]), UPPER), notches[i]));
+        }
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"), UPPER)));
+        rotors.add(new Reflector("C", new Permutation(NAVALA.get("C"), UPPER)));
+        return new Machine(UPPER, 3, 2, rotors);
+    }
+
+    @Test
+    public void stopsAtKeyWithPlugboard() {
+        Machine machine = smallMachine();
+        machine.insertRotors(new String[] {"B", "III", "I"});
+        machine.setRotors("KX");
+        machine.setPlugboard(new Permutation("(AT) (EW) (HR) (NO)", UPPER));
+        String plain = "WEATHERREPORTFORTHENORTHSEATODAY";
+        String cipher = machine.convert(plain);
+        Bombe bombe = new Bombe(smallMachine(), ForkJoinPool.commonPool());
+        List<String> stops = bombe.run(plain.substring(0, 24),
+                                       cipher, 0);
+        String found = null;
+        for (String stop : stops) {
+            if (stop.startsWith("B III I KX ")) {
+                found = stop;
+            }
+        }
+        assertNotNull(found);
+        for (String pair : new String[] {"(AT)", "(EW)", "(HR)", "(NO)"}) {
+            assertTrue(msg("bombe", "%s in %s", pair, found),
+                       found.contains(pair));
+        }
+        assertTrue(msg("bombe", "%d stops", stops.size()), stops.size() < 20);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void rejectsNonInvolutiveReflector() {
+        Collection<Rotor> rotors = new ArrayList<Rotor>();
+        rotors.add(new MovingRotor("I",
+            new Permutation(NAVALA.get("I"), UPPER), "Q"));
+        rotors.add(new MovingRotor("II",
+            new Permutation(NAVALA.get("II"), UPPER), "E"));
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"), UPPER)));
+        rotors.add(new Reflector("X", new Permutation("(ABC) (DE)", UPPER)));
+        new Bombe(new Machine(UPPER, 3, 2, rotors),
+                  ForkJoinPool.commonPool());
+    }
+
+}
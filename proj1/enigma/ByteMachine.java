@@ -0,0 +1,78 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static enigma.EnigmaException.*;
+
+/** Runs binary data through an Enigma machine whose alphabet has exactly
+ *  256 characters.  Each byte B stands for the character with index B
+ *  (taken as unsigned), so bytes go directly to and from indices: there
+ *  is no character decoding, no case folding, no settings lines, and
+ *  no grouping of the output.
+ *  @author Bryan Lim
+ */
+class ByteMachine {
+
+    /** A byte machine that converts through MACHINE, whose alphabet must
+     *  have SYMBOLS characters. */
+    ByteMachine(Machine machine) {
+        if (machine.alphabet().size() != SYMBOLS) {
+            throw error("byte mode needs an alphabet of %d characters, "
+                        + "not %d", SYMBOLS, machine.alphabet().size());
+        }
+        _machine = machine;
+    }
+
+    /** Return the machine I convert through. */
+    Machine machine() {
+        return _machine;
+    }
+
+    /** Convert the LEN bytes BUF[OFF .. OFF+LEN-1] in place, as if by
+     *  converting each byte in turn. */
+    void convert(byte[] buf, int off, int len) {
+        for (int done = 0; done < len; done += _indices.length) {
+            int n = Math.min(_indices.length, len - done);
+            int base = off + done;
+            for (int i = 0; i < n; i += 1) {
+                _indices[i] = buf[base + i] & BYTE_MASK;
+            }
+            _machine.convert(_indices, 0, n);
+            for (int i = 0; i < n; i += 1) {
+                buf[base + i] = (byte) _indices[i];
+            }
+        }
+    }
+
+    /** Convert all the bytes remaining in IN, writing the results to
+     *  OUT.  Neither stream is closed. */
+    void convert(InputStream in, OutputStream out) throws IOException {
+        byte[] buf = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buf)) >= 0) {
+            convert(buf, 0, n);
+            out.write(buf, 0, n);
+        }
+        out.flush();
+    }
+
+    /** Number of characters in the alphabet of a byte machine. */
+    static final int SYMBOLS = 256;
+
+    /** Mask selecting the low-order byte of an int. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Size of the stream buffer, in bytes. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Number of bytes converted at a time. */
+    private static final int BATCH_SIZE = 4096;
+
+    /** The machine bytes are converted through. */
+    private final Machine _machine;
+
+    /** Indices of the bytes being converted. */
+    private final int[] _indices = new int[BATCH_SIZE];
+}
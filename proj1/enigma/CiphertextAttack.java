@@ -0,0 +1,371 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static enigma.EnigmaException.*;
+
+/** A ciphertext-only attack on a machine configuration, after the
+ *  method of Gillogly and of Weierud and Sullivan.  First, every rotor
+ *  order and setting is tried with an empty plugboard, and the keys
+ *  whose decryptions have the highest index of coincidence are kept.
+ *  Then, for each of those, the plugboard and the rotor settings are
+ *  improved by hill climbing: pairs of characters are plugged or
+ *  unplugged, and single rotors moved a position either way, whenever
+ *  that improves the score of the decryption, first by index of
+ *  coincidence and then by n-gram log-likelihood (see TextScore).
+ *
+ *  The sweep over the keys (see KeySpace) is split across a fork-join
+ *  pool, and the climbs run concurrently, one per candidate key.  During
+ *  a climb the rotors' conversion at each position of the message is
+ *  kept in a table, so that a trial plugboard is scored by table lookups
+ *  alone; each task has its own machine and buffers, and scoring a trial
+ *  decryption allocates nothing.
+ *  @author Bryan Lim
+ */
+class CiphertextAttack {
+
+    /** An attack on the rotor orders and settings of MACHINE that scores
+     *  decryptions with SCORE, run on POOL. */
+    CiphertextAttack(Machine machine, TextScore score, ForkJoinPool pool) {
+        if (score.alphabet().size() != machine.alphabet().size()) {
+            throw error("scores are for a different alphabet");
+        }
+        _prototype = machine.copy();
+        _prototype.setPlugboard(new Permutation("", machine.alphabet()));
+        _alphabet = machine.alphabet();
+        _score = score;
+        _pool = pool;
+        _keys = new KeySpace(machine);
+    }
+
+    /** Return the keys that best decrypt CIPHER, best first, found by
+     *  climbing from the CANDIDATES keys that sweep best.  Each key is
+     *  given as a settings line without its leading '*'. */
+    List<String> run(String cipher, int candidates) {
+        if (cipher.length() < 2) {
+            throw error("ciphertext too short");
+        }
+        if (candidates < 1) {
+            throw error("need at least one candidate");
+        }
+        int[] coded = new int[cipher.length()];
+        for (int i = 0; i < coded.length; i += 1) {
+            coded[i] = _alphabet.toInt(cipher.charAt(i));
+        }
+        Best best =
+            _pool.invoke(new Sweep(coded, candidates, 0, _keys.size()));
+        List<Climb> climbs = new ArrayList<Climb>();
+        for (int k = 0; k < best.count; k += 1) {
+            climbs.add(new Climb(coded, best.keys[k]));
+        }
+        for (Climb climb : climbs) {
+            _pool.execute(climb);
+        }
+        Best results = new Best(climbs.size());
+        for (int k = 0; k < climbs.size(); k += 1) {
+            results.offer(k, climbs.get(k).join());
+        }
+        List<String> result = new ArrayList<String>();
+        for (int k = 0; k < results.count; k += 1) {
+            result.add(climbs.get((int) results.keys[k]).describe());
+        }
+        return result;
+    }
+
+    /** The highest-scoring keys seen, best first. */
+    private static class Best {
+
+        /** Room for the CAPACITY best keys. */
+        Best(int capacity) {
+            keys = new long[capacity];
+            scores = new double[capacity];
+        }
+
+        /** Keep KEY, with score SCORE, if it is among the best. */
+        void offer(long key, double score) {
+            if (count == keys.length && score <= scores[count - 1]) {
+                return;
+            }
+            int i = count == keys.length ? count - 1 : count;
+            while (i > 0 && scores[i - 1] < score) {
+                keys[i] = keys[i - 1];
+                scores[i] = scores[i - 1];
+                i -= 1;
+            }
+            keys[i] = key;
+            scores[i] = score;
+            count = Math.min(count + 1, keys.length);
+        }
+
+        /** Offer each of OTHER's keys. */
+        void offerAll(Best other) {
+            for (int k = 0; k < other.count; k += 1) {
+                offer(other.keys[k], other.scores[k]);
+            }
+        }
+
+        /** The best keys, best first. */
+        final long[] keys;
+        /** Their scores. */
+        final double[] scores;
+        /** Number of keys kept. */
+        int count;
+    }
+
+    /** Scores a range of keys with an empty plugboard by index of
+     *  coincidence. */
+    private class Sweep extends KeySpace.Task<Best> {
+
+        /** Try the keys in [LO, HI) on ciphertext CODED, keeping the KEEP
+         *  best. */
+        Sweep(int[] coded, int keep, long lo, long hi) {
+            super(lo, hi, GRAIN);
+            _coded = coded;
+            _keep = keep;
+        }
+
+        @Override
+        Sweep part(long lo, long hi) {
+            return new Sweep(_coded, _keep, lo, hi);
+        }
+
+        @Override
+        Best merge(Best left, Best right) {
+            left.offerAll(right);
+            return left;
+        }
+
+        /** Return the best of the keys in [LO, HI). */
+        @Override
+        Best tryKeys(long lo, long hi) {
+            Best result = new Best(_keep);
+            Machine machine = _prototype.copy();
+            int[] setting = new int[machine.numRotors() - 1];
+            int[] text = new int[_coded.length];
+            int[] counts = new int[_alphabet.size()];
+            int order = -1;
+            for (long key = lo; key < hi; key += 1) {
+                order = _keys.set(machine, key, order, setting);
+                System.arraycopy(_coded, 0, text, 0, text.length);
+                machine.convert(text, 0, text.length);
+                result.offer(key, TextScore.indexOfCoincidence(
+                    text, text.length, counts));
+            }
+            return result;
+        }
+
+        /** The ciphertext, as indices. */
+        private final int[] _coded;
+        /** Number of keys to keep. */
+        private final int _keep;
+    }
+
+    /** Improves a single candidate key by hill climbing. */
+    private class Climb extends RecursiveTask<Double> {
+
+        /** A climb from key KEY on ciphertext CODED. */
+        Climb(int[] coded, long key) {
+            _coded = coded;
+            _key = key;
+        }
+
+        @Override
+        protected Double compute() {
+            int n = _alphabet.size();
+            _machine = _prototype.copy();
+            _setting = new int[_machine.numRotors() - 1];
+            _order = _keys.set(_machine, _key, -1, _setting);
+            _tables = new int[_coded.length][n];
+            _plugboard = new int[n];
+            _saved = new int[n];
+            _text = new int[_coded.length];
+            _counts = new int[n];
+            for (int c = 0; c < n; c += 1) {
+                _plugboard[c] = c;
+            }
+            fillTables();
+            double score = 0;
+            for (boolean ngrams : new boolean[] {false, true}) {
+                score = score(ngrams);
+                for (int round = 0; round < MAX_ROUNDS; round += 1) {
+                    double plugged = climbPlugboard(score, ngrams);
+                    double moved = climbSettings(plugged, ngrams);
+                    if (moved <= score) {
+                        break;
+                    }
+                    score = moved;
+                }
+            }
+            return score;
+        }
+
+        /** Return the settings line (without '*') for my key. */
+        String describe() {
+            int n = _alphabet.size();
+            StringBuilder result = _keys.describe(_order, _setting);
+            for (int a = 0; a < n; a += 1) {
+                if (_plugboard[a] > a) {
+                    result.append(" (").append(_alphabet.toChar(a))
+                        .append(_alphabet.toChar(_plugboard[a])).append(')');
+                }
+            }
+            return result.toString();
+        }
+
+        /** Plug or unplug pairs for as long as that improves on SCORE,
+         *  the current score (by n-grams iff NGRAMS), and return the new
+         *  score. */
+        private double climbPlugboard(double score, boolean ngrams) {
+            int n = _alphabet.size();
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                for (int a = 0; a < n; a += 1) {
+                    for (int b = a + 1; b < n; b += 1) {
+                        System.arraycopy(_plugboard, 0, _saved, 0, n);
+                        if (!toggle(a, b)) {
+                            continue;
+                        }
+                        double trial = score(ngrams);
+                        if (trial > score) {
+                            score = trial;
+                            improved = true;
+                        } else {
+                            System.arraycopy(_saved, 0, _plugboard, 0, n);
+                        }
+                    }
+                }
+            }
+            return score;
+        }
+
+        /** Move single rotors one position either way for as long as
+         *  that improves on SCORE, the current score (by n-grams iff
+         *  NGRAMS), and return the new score. */
+        private double climbSettings(double score, boolean ngrams) {
+            int n = _alphabet.size();
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                for (int i = 0; i < _setting.length; i += 1) {
+                    for (int delta : DELTAS) {
+                        int old = _setting[i];
+                        _setting[i] = (old + delta + n) % n;
+                        fillTables();
+                        double trial = score(ngrams);
+                        if (trial > score) {
+                            score = trial;
+                            improved = true;
+                        } else {
+                            _setting[i] = old;
+                            fillTables();
+                        }
+                    }
+                }
+            }
+            return score;
+        }
+
+        /** Change my plugboard by joining A and B, first unplugging
+         *  whatever either is joined to, or by separating them if they
+         *  are already joined.  Return false (changing nothing) if that
+         *  would need more than MAX_PAIRS pairs. */
+        private boolean toggle(int a, int b) {
+            if (_plugboard[a] == b) {
+                _plugboard[a] = a;
+                _plugboard[b] = b;
+                return true;
+            }
+            int pa = _plugboard[a], pb = _plugboard[b];
+            _plugboard[pa] = pa;
+            _plugboard[pb] = pb;
+            _plugboard[a] = b;
+            _plugboard[b] = a;
+            int pairs = 0;
+            for (int c = 0; c < _plugboard.length; c += 1) {
+                if (_plugboard[c] > c) {
+                    pairs += 1;
+                }
+            }
+            if (pairs > MAX_PAIRS) {
+                System.arraycopy(_saved, 0, _plugboard, 0, _plugboard.length);
+                return false;
+            }
+            return true;
+        }
+
+        /** Recompute _tables for my current rotor order and setting. */
+        private void fillTables() {
+            _machine.setRotors(_setting);
+            for (int[] table : _tables) {
+                _machine.press(table);
+            }
+        }
+
+        /** Return the score of the decryption under my current key, by
+         *  n-grams iff NGRAMS and otherwise by index of coincidence. */
+        private double score(boolean ngrams) {
+            int[] s = _plugboard;
+            for (int i = 0; i < _coded.length; i += 1) {
+                _text[i] = s[_tables[i][s[_coded[i]]]];
+            }
+            if (ngrams) {
+                return _score.score(_text, _text.length);
+            }
+            return TextScore.indexOfCoincidence(_text, _text.length,
+                                                _counts);
+        }
+
+        /** The ciphertext, as indices. */
+        private final int[] _coded;
+        /** The key I start from. */
+        private final long _key;
+        /** My copy of the machine. */
+        private Machine _machine;
+        /** Index of my rotor order. */
+        private int _order;
+        /** My current rotor setting. */
+        private int[] _setting;
+        /** My current plugboard, as the image of each index. */
+        private int[] _plugboard;
+        /** Copy of _plugboard before the trial change. */
+        private int[] _saved;
+        /** The conversion by the rotors alone at each message position. */
+        private int[][] _tables;
+        /** The current trial decryption. */
+        private int[] _text;
+        /** Scratch space for computing indices of coincidence. */
+        private int[] _counts;
+    }
+
+    /** Moves tried for each rotor while climbing. */
+    private static final int[] DELTAS = {1, -1};
+
+    /** Largest number of plugboard pairs tried. */
+    private static final int MAX_PAIRS = 10;
+
+    /** Largest number of alternations between plugboard and settings
+     *  climbs for each score. */
+    private static final int MAX_ROUNDS = 8;
+
+    /** Largest number of keys swept by a single task. */
+    private static final int GRAIN = 1 << 12;
+
+    /** Machine copied by each task. */
+    private final Machine _prototype;
+
+    /** Alphabet of _prototype. */
+    private final Alphabet _alphabet;
+
+    /** Scores decryptions by n-gram. */
+    private final TextScore _score;
+
+    /** Pool on which keys are tried. */
+    private final ForkJoinPool _pool;
+
+    /** Keys to try. */
+    private final KeySpace _keys;
+}
@@ -0,0 +1,144 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CiphertextAttack and TextScore
+ *  classes.
+ *  @author Bryan Lim
+ */
+public class CiphertextAttackTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Sample of English used to train the n-gram scores. */
+    private static final String SAMPLE =
+        "It was the best of times, it was the worst of times, it was the "
+        + "age of wisdom, it was the age of foolishness, it was the epoch "
+        + "of belief, it was the epoch of incredulity, it was the season "
+        + "of Light, it was the season of Darkness, it was the spring of "
+        + "hope, it was the winter of despair, we had everything before "
+        + "us, we had nothing before us, we were all going direct to "
+        + "Heaven, we were all going direct the other way. In short, the "
+        + "period was so far like the present period, that some of its "
+        + "noisiest authorities insisted on its being received, for good "
+        + "or for evil, in the superlative degree of comparison only. "
+        + "There were a king with a large jaw and a queen with a plain "
+        + "face, on the throne of England; there were a king with a large "
+        + "jaw and a queen with a fair face, on the throne of France. In "
+        + "both countries it was clearer than crystal to the lords of the "
+        + "State preserves of loaves and fishes, that things in general "
+        + "were settled for ever.";
+
+    /** Message encrypted for the attack. */
+    private static final String MESSAGE =
+        "Call me Ishmael. Some years ago, never mind how long precisely, "
+        + "having little or no money in my purse, and nothing particular "
+        + "to interest me on shore, I thought I would sail about a little "
+        + "and see the watery part of the world. It is a way I have of "
+        + "driving off the spleen and regulating the circulation. Whenever "
+        + "I find myself growing grim about the mouth; whenever it is a "
+        + "damp, drizzly November in my soul; whenever I find myself "
+        + "involuntarily pausing before coffin warehouses, and bringing "
+        + "up the rear of every funeral I meet; and especially whenever "
+        + "my hypos get such an upper hand of me, that it requires a "
+        + "strong moral principle to prevent me from deliberately "
+        + "stepping into the street, and methodically knocking people's "
+        + "hats off, then, I account it high time to get to sea as soon "
+        + "as I can.";
+
+    /** Return a three-slot, two-pawl machine with the naval rotors I-IV
+     *  and reflector B. */
+    private Machine smallMachine() {
+        Collection<Rotor> rotors = new ArrayList<Rotor>();
+        String[] notches = {"Q", "E", "V", "J"};
+        String[] names = {"I", "II", "III", "IV"};
+        for (int i = 0; i < names.length; i++) {
+            rotors.add(new MovingRotor(names[i],
+                new Permutation(NAVALA.get(names[i]), UPPER), notches[i]));
+        }
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"), UPPER)));
+        return new Machine(UPPER, 3, 2, rotors);
+    }
+
+    /** Return the letters of TEXT, in upper case. */
+    private String letters(String text) {
+        return text.replaceAll("[^A-Za-z]", "").toUpperCase();
+    }
+
+    @Test
+    public void indexOfCoincidence() {
+        int[] counts = new int[26];
+        int[] same = {3, 3, 3, 3};
+        assertEquals(1.0, TextScore.indexOfCoincidence(same, 4, counts),
+                     1e-9);
+        int[] distinct = {0, 1, 2, 3};
+        assertEquals(0.0, TextScore.indexOfCoincidence(distinct, 4, counts),
+                     1e-9);
+    }
+
+    @Test
+    public void ngramsPreferLanguage() {
+        TextScore score = new TextScore(SAMPLE, 3, UPPER);
+        String english = letters("the season of light was the best");
+        String noise = "QXZJVKWQPZXJQKVWZXQJPKZVX";
+        int[] a = new int[english.length()], b = new int[noise.length()];
+        for (int i = 0; i < a.length; i += 1) {
+            a[i] = UPPER.toInt(english.charAt(i));
+        }
+        for (int i = 0; i < b.length; i += 1) {
+            b[i] = UPPER.toInt(noise.charAt(i));
+        }
+        assertTrue(score.score(a, a.length) / a.length
+                   > score.score(b, b.length) / b.length);
+    }
+
+    @Test
+    public void scoresAtTableLimit() {
+        int size = (int) Math.sqrt(TextScore.MAX_TABLE);
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < size; i += 1) {
+            chars.append((char) ('\u4e00' + i));
+        }
+        Alphabet alphabet = new Alphabet(chars.toString());
+        String pair = chars.substring(size - 2);
+        StringBuilder sample = new StringBuilder();
+        for (int i = 0; i < 100; i += 1) {
+            sample.append(pair);
+        }
+        TextScore score = new TextScore(sample.toString(), 2, alphabet);
+        int[] seen = {size - 2, size - 1, size - 2, size - 1, size - 2};
+        int[] unseen = {size - 1, size - 1, size - 1, size - 1, size - 1};
+        assertTrue(score.score(seen, seen.length)
+                   > score.score(unseen, unseen.length));
+        assertEquals(2 * score.score(unseen, 3),
+                     score.score(unseen, unseen.length), 1e-3);
+    }
+
+    @Test
+    public void recoversKey() {
+        Machine machine = smallMachine();
+        machine.insertRotors(new String[] {"B", "IV", "II"});
+        machine.setRotors("GT");
+        machine.setPlugboard(new Permutation("(AM) (CS) (EK)", UPPER));
+        String cipher = machine.convert(letters(MESSAGE));
+        CiphertextAttack attack =
+            new CiphertextAttack(smallMachine(),
+                                 new TextScore(SAMPLE, 3, UPPER),
+                                 ForkJoinPool.commonPool());
+        List<String> keys = attack.run(cipher, 8);
+        assertEquals("B IV II GT (AM) (CS) (EK)", keys.get(0));
+    }
+
+}
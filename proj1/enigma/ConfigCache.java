@@ -0,0 +1,256 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+import static enigma.EnigmaException.*;
+
+/** A directory of compiled machine configurations.  Each configuration
+ *  file is compiled to a binary image holding its alphabet, its rotor
+ *  counts, and for each rotor its kind, name, notches and permutation
+ *  table.  Images are named by the SHA-256 hash of the configuration's
+ *  text, so an edited configuration is simply a cache miss.  Loading an
+ *  image maps it into memory and involves no parsing of cycle notation.
+ *
+ *  An image consists of the int MAGIC, the int VERSION, the 32-byte hash,
+ *  the alphabet as a string, the number of rotor slots, the number of
+ *  pawls, and the number of rotors, followed by each rotor as a kind byte
+ *  ('M', 'N' or 'R'), its name and notches as strings, and its
+ *  permutation as a byte that is 1 iff it is a derangement, an int size,
+ *  and the image of each index.
+ *  Strings are written as an int length followed by that many chars.
+ *  @author Bryan Lim
+ */
+class ConfigCache {
+
+    /** A cache of compiled configurations kept in DIRECTORY, which is
+     *  created if necessary. */
+    ConfigCache(File directory) {
+        _directory = directory.toPath();
+        try {
+            Files.createDirectories(_directory);
+        } catch (IOException excp) {
+            throw error("could not create cache directory %s", directory);
+        }
+    }
+
+    /** Return a machine built from the compiled image of the
+     *  configuration whose text is CONFIG, or null if there is no
+     *  usable image.  A truncated or corrupt image is not usable. */
+    Machine load(byte[] config) {
+        byte[] hash = hash(config);
+        Path image = imageFor(hash);
+        if (!Files.isReadable(image)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(image)) {
+            ByteBuffer buf =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return decode(buf, hash);
+        } catch (IOException | BufferUnderflowException
+                 | EnigmaException excp) {
+            return null;
+        }
+    }
+
+    /** Store a compiled image for the configuration whose text is CONFIG,
+     *  describing a machine with alphabet ALPHABET, NUMROTORS slots, PAWLS
+     *  pawls and rotors ROTORS.  Failure to write the image is not an
+     *  error; the configuration will simply be compiled again. */
+    void store(byte[] config, Alphabet alphabet, int numRotors, int pawls,
+               Collection<Rotor> rotors) {
+        byte[] hash = hash(config);
+        ByteBuffer buf = ByteBuffer.allocate(encodedSize(alphabet, rotors));
+        buf.putInt(MAGIC).putInt(VERSION).put(hash);
+        putString(buf, alphabetChars(alphabet));
+        buf.putInt(numRotors).putInt(pawls).putInt(rotors.size());
+        for (Rotor rotor : rotors) {
+            buf.put(kind(rotor));
+            putString(buf, rotor.name());
+            putString(buf, rotor.notches());
+            buf.put((byte) (rotor.permutation().derangement() ? 1 : 0));
+            buf.putInt(rotor.size());
+            for (int i = 0; i < rotor.size(); i++) {
+                buf.putInt(rotor.permutation().permute(i));
+            }
+        }
+        buf.flip();
+        Path temp;
+        try {
+            temp = Files.createTempFile(_directory, "image", ".tmp");
+        } catch (IOException excp) {
+            return;
+        }
+        try {
+            try (FileChannel channel =
+                 FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+            }
+            Files.move(temp, imageFor(hash),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                return;
+            }
+        }
+    }
+
+    /** Return the machine described by the image in BUF, which must have
+     *  been compiled from a configuration whose hash is HASH. */
+    private Machine decode(ByteBuffer buf, byte[] hash) {
+        if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+            throw error("not a configuration image");
+        }
+        byte[] imageHash = new byte[hash.length];
+        buf.get(imageHash);
+        if (!Arrays.equals(imageHash, hash)) {
+            throw error("stale configuration image");
+        }
+        Alphabet alphabet = Alphabet.of(getString(buf));
+        int numRotors = buf.getInt();
+        int pawls = buf.getInt();
+        int count = getLength(buf, 1);
+        if (numRotors < 0 || numRotors > count || pawls < 0
+            || pawls > numRotors) {
+            throw error("corrupt configuration image");
+        }
+        Collection<Rotor> rotors = new ArrayList<Rotor>(count);
+        for (int k = 0; k < count; k++) {
+            byte kind = buf.get();
+            String name = getString(buf);
+            String notches = getString(buf);
+            boolean derangement = buf.get() != 0;
+            int[] forward = new int[getLength(buf, Integer.BYTES)];
+            buf.asIntBuffer().get(forward);
+            buf.position(buf.position() + forward.length * Integer.BYTES);
+            Permutation perm = new Permutation(forward, alphabet, derangement);
+            switch (kind) {
+            case 'M':
+                rotors.add(new MovingRotor(name, perm, notches));
+                break;
+            case 'N':
+                rotors.add(new FixedRotor(name, perm));
+                break;
+            case 'R':
+                rotors.add(new Reflector(name, perm));
+                break;
+            default:
+                throw error("bad rotor kind in configuration image");
+            }
+        }
+        return new Machine(alphabet, numRotors, pawls, rotors);
+    }
+
+    /** Return the characters of ALPHABET, in order. */
+    private static String alphabetChars(Alphabet alphabet) {
+        char[] chars = new char[alphabet.size()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = alphabet.toChar(i);
+        }
+        return new String(chars);
+    }
+
+    /** Return the kind byte describing ROTOR. */
+    private static byte kind(Rotor rotor) {
+        if (rotor.reflecting()) {
+            return 'R';
+        } else if (rotor.rotates()) {
+            return 'M';
+        } else {
+            return 'N';
+        }
+    }
+
+    /** Return the number of bytes in the image of a configuration with
+     *  alphabet ALPHABET and rotors ROTORS. */
+    private static int encodedSize(Alphabet alphabet,
+                                   Collection<Rotor> rotors) {
+        int size = 2 * Integer.BYTES + HASH_LENGTH
+            + stringSize(alphabetChars(alphabet)) + 3 * Integer.BYTES;
+        for (Rotor rotor : rotors) {
+            size += 2 + stringSize(rotor.name()) + stringSize(rotor.notches())
+                + Integer.BYTES * (1 + rotor.size());
+        }
+        return size;
+    }
+
+    /** Return the number of bytes used to encode S. */
+    private static int stringSize(String s) {
+        return Integer.BYTES + Character.BYTES * s.length();
+    }
+
+    /** Write S to BUF. */
+    private static void putString(ByteBuffer buf, String s) {
+        buf.putInt(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            buf.putChar(s.charAt(i));
+        }
+    }
+
+    /** Read and return a string from BUF. */
+    private static String getString(ByteBuffer buf) {
+        char[] chars = new char[getLength(buf, Character.BYTES)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = buf.getChar();
+        }
+        return new String(chars);
+    }
+
+    /** Read and return from BUF the number of items of UNIT bytes each
+     *  that follow, which must fit in the rest of BUF. */
+    private static int getLength(ByteBuffer buf, int unit) {
+        int length = buf.getInt();
+        if (length < 0 || length > buf.remaining() / unit) {
+            throw error("corrupt configuration image");
+        }
+        return length;
+    }
+
+    /** Return the SHA-256 hash of TEXT. */
+    private static byte[] hash(byte[] text) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(text);
+        } catch (NoSuchAlgorithmException excp) {
+            throw error("SHA-256 is unavailable");
+        }
+    }
+
+    /** Return the path of the image for the configuration whose hash is
+     *  HASH. */
+    private Path imageFor(byte[] hash) {
+        StringBuilder name = new StringBuilder();
+        for (byte b : hash) {
+            name.append(String.format("%02x", b));
+        }
+        return _directory.resolve(name.append(".bin").toString());
+    }
+
+    /** Identifies a configuration image. */
+    private static final int MAGIC = 0x454e4947;
+
+    /** Version of the image format. */
+    private static final int VERSION = 2;
+
+    /** Length of a SHA-256 hash, in bytes. */
+    private static final int HASH_LENGTH = 32;
+
+    /** Directory holding the images. */
+    private final Path _directory;
+}
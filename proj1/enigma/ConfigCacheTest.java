@@ -0,0 +1,109 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ConfigCache class.
+ *  @author Bryan Lim
+ */
+public class ConfigCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return the naval rotors I-V, Beta, and B. */
+    private Collection<Rotor> navalRotors() {
+        Collection<Rotor> rotors = new ArrayList<Rotor>();
+        String[] notches = {"Q", "E", "V", "J", "Z"};
+        String[] names = {"I", "II", "III", "IV", "V"};
+        for (int i = 0; i < names.length; i++) {
+            rotors.add(new MovingRotor(names[i],
+                new Permutation(NAVALA.get(names[i]), UPPER), notches[i]));
+        }
+        rotors.add(new FixedRotor("Beta",
+                                  new Permutation(NAVALA.get("Beta"), UPPER)));
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"), UPPER)));
+        return rotors;
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        File dir = Files.createTempDirectory("enigma").toFile();
+        ConfigCache cache = new ConfigCache(dir);
+        byte[] config = "some configuration text".getBytes();
+        assertNull(cache.load(config));
+
+        Collection<Rotor> rotors = navalRotors();
+        cache.store(config, UPPER, 5, 3, rotors);
+        Machine original = new Machine(UPPER, 5, 3, rotors);
+        Machine loaded = cache.load(config);
+        assertNotNull(loaded);
+        assertEquals(5, loaded.numRotors());
+        assertEquals(3, loaded.numPawls());
+
+        String[] order = {"B", "Beta", "I", "II", "III"};
+        for (Machine machine : new Machine[] {original, loaded}) {
+            machine.insertRotors(order);
+            machine.setRotors("AAAA");
+            machine.setPlugboard(new Permutation("(AQ) (EP)", UPPER));
+        }
+        String msg = "HELLOWORLDTHEQUICKBROWNFOXJUMPSOVERTHELAZYDOG";
+        assertEquals(original.convert(msg), loaded.convert(msg));
+        assertNull(cache.load("other configuration text".getBytes()));
+    }
+
+    @Test
+    public void corruptImagesMiss() throws IOException {
+        File dir = Files.createTempDirectory("enigma").toFile();
+        ConfigCache cache = new ConfigCache(dir);
+        byte[] config = "corrupted configuration".getBytes();
+        cache.store(config, UPPER, 5, 3, navalRotors());
+        File[] images = dir.listFiles();
+        assertEquals(1, images.length);
+        byte[] image = Files.readAllBytes(images[0].toPath());
+
+        int alphabetLength = 2 * Integer.BYTES + 32;
+        for (int length : new int[] {-5, Integer.MAX_VALUE, image.length}) {
+            byte[] bad = image.clone();
+            ByteBuffer.wrap(bad).putInt(alphabetLength, length);
+            Files.write(images[0].toPath(), bad);
+            assertNull(cache.load(config));
+        }
+        Files.write(images[0].toPath(),
+                    Arrays.copyOf(image, image.length / 2));
+        assertNull(cache.load(config));
+        Files.write(images[0].toPath(), image);
+        assertNotNull(cache.load(config));
+    }
+
+    @Test
+    public void keepsDerangements() throws IOException {
+        ConfigCache cache =
+            new ConfigCache(Files.createTempDirectory("enigma").toFile());
+        byte[] config = "partial cycles".getBytes();
+        Collection<Rotor> rotors = new ArrayList<Rotor>();
+        rotors.add(new FixedRotor("P", new Permutation("(AB)", UPPER)));
+        rotors.add(new FixedRotor("S", new Permutation("(AB) (C)", UPPER)));
+        cache.store(config, UPPER, 2, 0, rotors);
+        Machine loaded = cache.load(config);
+        assertNotNull(loaded);
+        for (Rotor rotor : loaded.availableRotors()) {
+            assertEquals(rotor.name().equals("P"),
+                         rotor.permutation().derangement());
+        }
+    }
+
+}
@@ -0,0 +1,164 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.EnigmaException.*;
+
+/** A known-plaintext ("crib") attack on a machine configuration.  Given
+ *  a ciphertext and a stretch of plaintext (the crib) believed to start
+ *  at a known offset within it, tries every rotor order the
+ *  configuration allows with every setting of the rotors, and reports
+ *  the keys under which the ciphertext decrypts to the crib.
+ *
+ *  Ranges of keys (see KeySpace) are split across a fork-join pool, and
+ *  each task tries its keys on its own copy of the machine, allocating
+ *  nothing per key.  A key is abandoned at the first character that
+ *  fails to match.  Since a machine whose reflectors are all
+ *  derangements never converts a character to itself, a crib that would
+ *  require it to is rejected before any key is tried.
+ *  @author Bryan Lim
+ */
+class CribSearch {
+
+    /** A search over the rotor orders and settings of MACHINE, whose
+     *  plugboard is taken to be PLUGBOARD, carried out on POOL. */
+    CribSearch(Machine machine, Permutation plugboard, ForkJoinPool pool) {
+        _prototype = machine.copy();
+        _alphabet = machine.alphabet();
+        _plugboard = plugboard;
+        _pool = pool;
+        _keys = new KeySpace(machine);
+        boolean derangements = true;
+        for (Rotor rotor : machine.availableRotors()) {
+            if (rotor.reflecting() && !rotor.permutation().fixedPointFree()) {
+                derangements = false;
+            }
+        }
+        _derangements = derangements;
+    }
+
+    /** Return the rotor orders I try (see KeySpace.orders()). */
+    List<String[]> orders() {
+        return _keys.orders();
+    }
+
+    /** Return true iff CRIB could be the plaintext of CIPHER starting at
+     *  OFFSET on a machine that never converts a character to itself:
+     *  that is, iff no character of CRIB is the same as the character of
+     *  CIPHER it lines up with. */
+    static boolean admissible(String crib, String cipher, int offset) {
+        for (int i = 0; i < crib.length(); i += 1) {
+            if (crib.charAt(i) == cipher.charAt(offset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the keys under which CIPHER, starting at index OFFSET,
+     *  decrypts to CRIB, in order.  Each key is given as a settings line
+     *  without its leading '*' or plugboard: the names of the rotors,
+     *  followed by their setting. */
+    List<String> search(String crib, String cipher, int offset) {
+        if (offset < 0 || offset + crib.length() > cipher.length()) {
+            throw error("crib does not fit in the ciphertext at %d", offset);
+        }
+        if (crib.isEmpty()) {
+            throw error("empty crib");
+        }
+        if (_derangements && !admissible(crib, cipher, offset)) {
+            return new ArrayList<String>();
+        }
+        int[] plain = new int[crib.length()];
+        int[] coded = new int[crib.length()];
+        for (int i = 0; i < plain.length; i += 1) {
+            plain[i] = _alphabet.toInt(crib.charAt(i));
+            coded[i] = _alphabet.toInt(cipher.charAt(offset + i));
+        }
+        return _pool.invoke(new Range(plain, coded, offset, 0,
+                                      _keys.size()));
+    }
+
+    /** Tries a range of keys. */
+    private class Range extends KeySpace.Task<List<String>> {
+
+        /** Try the keys in [LO, HI) against the crib PLAIN, which lines
+         *  up with CODED beginning OFFSET characters into the message. */
+        Range(int[] plain, int[] coded, int offset, long lo, long hi) {
+            super(lo, hi, GRAIN);
+            _plain = plain;
+            _coded = coded;
+            _offset = offset;
+        }
+
+        @Override
+        Range part(long lo, long hi) {
+            return new Range(_plain, _coded, _offset, lo, hi);
+        }
+
+        @Override
+        List<String> merge(List<String> left, List<String> right) {
+            return KeySpace.concat(left, right);
+        }
+
+        /** Try each of the keys in [LO, HI) in turn on a copy of the
+         *  machine, and return the ones that fit. */
+        @Override
+        List<String> tryKeys(long lo, long hi) {
+            List<String> result = new ArrayList<String>();
+            Machine machine = _prototype.copy();
+            machine.setPlugboard(_plugboard);
+            int[] setting = new int[machine.numRotors() - 1];
+            int order = -1;
+            for (long key = lo; key < hi; key += 1) {
+                order = _keys.set(machine, key, order, setting);
+                if (fits(machine)) {
+                    result.add(_keys.describe(order, setting).toString());
+                }
+            }
+            return result;
+        }
+
+        /** Return true iff MACHINE, set to some key, decrypts my
+         *  ciphertext to my crib. */
+        private boolean fits(Machine machine) {
+            machine.skip(_offset);
+            for (int i = 0; i < _plain.length; i += 1) {
+                if (machine.convert(_coded[i]) != _plain[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** The crib, as indices. */
+        private final int[] _plain;
+        /** The ciphertext lined up with the crib, as indices. */
+        private final int[] _coded;
+        /** Number of characters of the message preceding the crib. */
+        private final int _offset;
+    }
+
+    /** Largest number of keys tried by a single task. */
+    private static final int GRAIN = 1 << 14;
+
+    /** Machine copied by each task. */
+    private final Machine _prototype;
+
+    /** Alphabet of _prototype. */
+    private final Alphabet _alphabet;
+
+    /** Plugboard used with every key. */
+    private final Permutation _plugboard;
+
+    /** Pool on which keys are tried. */
+    private final ForkJoinPool _pool;
+
+    /** Keys to try. */
+    private final KeySpace _keys;
+
+    /** True iff every available reflector is a derangement. */
+    private final boolean _derangements;
+}
@@ -0,0 +1,103 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CribSearch class.
+ *  @author Bryan Lim
+ */
+public class CribSearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Offset of the crib used in checking allocation: long enough that
+     *  every rotor moves. */
+    private static final int OFFSET = 1000;
+
+    /** Return a three-slot, two-pawl machine with the naval rotors I-IV
+     *  and reflectors B and C. */
+    private Machine smallMachine() {
+        Collection<Rotor> rotors = new ArrayList<Rotor>();
+        String[] notches = {"Q", "E", "V", "J"};
+        String[] names = {"I", "II", "III", "IV"};
+        for (int i = 0; i < names.length; i++) {
+            rotors.add(new MovingRotor(names[i],
+                new Permutation(NAVALA.get(names[i]), UPPER), notches[i]));
+        }
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"), UPPER)));
+        rotors.add(new Reflector("C", new Permutation(NAVALA.get("C"), UPPER)));
+        return new Machine(UPPER, 3, 2, rotors);
+    }
+
+    @Test
+    public void ordersRespectSlots() {
+        CribSearch search = new CribSearch(smallMachine(),
+            new Permutation("", UPPER), ForkJoinPool.commonPool());
+        assertEquals(2 * 4 * 3, search.orders().size());
+        for (String[] order : search.orders()) {
+            assertTrue(order[0].equals("B") || order[0].equals("C"));
+            assertFalse(order[1].equals(order[2]));
+        }
+    }
+
+    @Test
+    public void keysAllocateNothing() {
+        Machine machine = smallMachine();
+        KeySpace keys = new KeySpace(machine);
+        int[] setting = new int[2];
+        int[] table = new int[UPPER.size()];
+        int order = -1, sum = 0;
+        long bytes = 0;
+        for (int round = 0; round < 2; round += 1) {
+            long before = allocatedBytes();
+            for (long key = 0; key < keys.size(); key += 1) {
+                order = keys.set(machine, key, order, setting);
+                machine.skip(OFFSET);
+                sum += machine.convert((int) (key % UPPER.size()));
+                machine.press(table);
+            }
+            bytes = allocatedBytes() - before;
+        }
+        assertTrue(sum > 0);
+        assertTrue(String.format("%d bytes for %d keys", bytes, keys.size()),
+                   bytes < keys.size());
+    }
+
+    @Test
+    public void findsKey() {
+        Permutation plugboard = new Permutation("(AT) (QW)", UPPER);
+        Machine machine = smallMachine();
+        machine.insertRotors(new String[] {"C", "IV", "II"});
+        machine.setRotors("QD");
+        machine.setPlugboard(plugboard);
+        String plain = "ATTACKATDAWNONTHEEASTERNFRONT";
+        String cipher = machine.convert(plain);
+        CribSearch search = new CribSearch(smallMachine(), plugboard,
+                                           ForkJoinPool.commonPool());
+        List<String> keys = search.search("DAWNONTHE", cipher, 8);
+        assertTrue(keys.contains("C IV II QD"));
+        assertEquals(1, keys.size());
+    }
+
+    @Test
+    public void rejectsSelfEncryption() {
+        assertFalse(CribSearch.admissible("HELLO", "XXLXX", 0));
+        assertFalse(CribSearch.admissible("HELLO", "XXHELLO", 2));
+        assertTrue(CribSearch.admissible("HELLO", "XXABCDE", 2));
+        CribSearch search = new CribSearch(smallMachine(),
+            new Permutation("", UPPER), ForkJoinPool.commonPool());
+        assertTrue(search.search("HELLO", "XXLXX", 0).isEmpty());
+    }
+
+}
@@ -0,0 +1,164 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static enigma.EnigmaException.*;
+
+/** A connection to an EnigmaServer, over which requests are made one
+ *  at a time.  See EnigmaServer for the protocol.
+ *  @author Bryan Lim
+ */
+class EnigmaClient implements AutoCloseable {
+
+    /** A client connected to the server at ADDRESS. */
+    EnigmaClient(SocketAddress address) {
+        try {
+            if (address instanceof UnixDomainSocketAddress) {
+                _channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+                _channel.connect(address);
+            } else {
+                _channel = SocketChannel.open(address);
+            }
+            InputStream in = new ChannelInput(_channel);
+            OutputStream out = new ChannelOutput(_channel);
+            _in = new DataInputStream(new BufferedInputStream(in));
+            _out = new DataOutputStream(new BufferedOutputStream(out));
+        } catch (IOException excp) {
+            throw error("could not connect to %s: %s", address,
+                        excp.getMessage());
+        }
+    }
+
+    /** Return the output for PAYLOAD, the text of an input file, converted
+     *  with my machine set to KEY, a settings line without its '*' (or
+     *  as the previous request left it, if KEY is empty).  An error
+     *  reported by the server is thrown as an EnigmaException. */
+    String convert(String key, String payload) {
+        CompletableFuture<Void> sent =
+            CompletableFuture.runAsync(() -> send(key, payload));
+        try {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            byte[] chunk = new byte[0];
+            int n;
+            while ((n = _in.readInt()) > 0) {
+                if (n > chunk.length) {
+                    chunk = new byte[n];
+                }
+                _in.readFully(chunk, 0, n);
+                result.write(chunk, 0, n);
+            }
+            sent.join();
+            if (n < 0) {
+                throw error("%s", EnigmaServer.readText(_in, _in.readInt()));
+            }
+            return result.toString(StandardCharsets.UTF_8);
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        } catch (CompletionException excp) {
+            throw (EnigmaException) excp.getCause();
+        }
+    }
+
+    /** Send a request for PAYLOAD with key KEY.  The output is read while
+     *  the request is being sent, since the server may answer before it
+     *  has read all of a long payload. */
+    private void send(String key, String payload) {
+        try {
+            EnigmaServer.writeText(_out, key);
+            EnigmaServer.writeText(_out, payload);
+            _out.flush();
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** Close my connection. */
+    @Override
+    public void close() {
+        try {
+            _channel.close();
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** A stream reading from a channel.  Unlike the streams made by
+     *  Channels, it does not lock out writes to the channel while it
+     *  waits for input, which would deadlock send. */
+    private static class ChannelInput extends InputStream {
+
+        /** A stream reading from CHANNEL. */
+        ChannelInput(SocketChannel channel) {
+            _channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & BYTE_MASK;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            return _channel.read(ByteBuffer.wrap(buf, off, len));
+        }
+
+        /** The channel read. */
+        private final SocketChannel _channel;
+    }
+
+    /** A stream writing to a channel without locking out reads. */
+    private static class ChannelOutput extends OutputStream {
+
+        /** A stream writing to CHANNEL. */
+        ChannelOutput(SocketChannel channel) {
+            _channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] buf, int off, int len) throws IOException {
+            ByteBuffer data = ByteBuffer.wrap(buf, off, len);
+            while (data.hasRemaining()) {
+                _channel.write(data);
+            }
+        }
+
+        /** The channel written. */
+        private final SocketChannel _channel;
+    }
+
+    /** Mask selecting the low-order byte of an int. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** The connection. */
+    private final SocketChannel _channel;
+
+    /** Reads from _channel. */
+    private final DataInputStream _in;
+
+    /** Writes to _channel. */
+    private final DataOutputStream _out;
+}
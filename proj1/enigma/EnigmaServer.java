@@ -0,0 +1,345 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static enigma.EnigmaException.*;
+
+/** Serves conversions through one machine configuration, parsed once,
+ *  to any number of concurrent clients over a local socket: either TCP
+ *  on the loopback interface or a Unix domain socket.
+ *
+ *  Each connection has a thread and a copy of the machine of its own,
+ *  and carries a sequence of requests, each answered in turn.  A request
+ *  is a key followed by a payload, each sent as a 4-byte big-endian
+ *  length followed by that many bytes of UTF-8 text.  The key is a
+ *  settings line without its '*', or is empty to continue with the
+ *  connection's machine as the previous request left it.  The payload
+ *  is text as in an input file for Main: its message lines are
+ *  converted and printed in groups of five, and it may contain settings
+ *  lines of its own, so that one request can carry a batch of messages
+ *  under many keys.  The output is streamed back as it is produced, as
+ *  chunks, each a length N > 0 followed by N bytes of UTF-8 text, and
+ *  then a length of 0.  If the request is in error, the output instead
+ *  ends with a length of -1 followed by an error message sent as for a
+ *  key.  The connection remains usable either way, but the request after
+ *  an error must have a key.
+ *
+ *  A Unix domain socket leaves a file at its path, which I delete when
+ *  closed.  A server that is killed cannot do so, and the file would
+ *  keep the next server from binding, so when I start I also delete a
+ *  socket file at my path on which no server is listening.  Any other
+ *  file there, or a socket still in use, is left alone and the bind
+ *  fails.
+ *  @author Bryan Lim
+ */
+class EnigmaServer implements AutoCloseable {
+
+    /** A server for copies of MACHINE listening at ADDRESS (see
+     *  address). */
+    EnigmaServer(Machine machine, SocketAddress address) {
+        _prototype = machine.copy();
+        try {
+            if (address instanceof UnixDomainSocketAddress) {
+                _channel =
+                    ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+                _socketFile = ((UnixDomainSocketAddress) address).getPath();
+                removeStale((UnixDomainSocketAddress) address);
+            } else {
+                _channel = ServerSocketChannel.open();
+                _socketFile = null;
+            }
+            _channel.bind(address);
+            _address = _channel.getLocalAddress();
+        } catch (IOException excp) {
+            throw error("could not listen at %s: %s", address,
+                        excp.getMessage());
+        }
+        _workers = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "enigma-connection");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Return the address described by SPEC: a port number on the
+     *  loopback interface if SPEC is all digits (0 for any free port),
+     *  and otherwise the path of a Unix domain socket, which must not
+     *  yet exist other than as a socket left by a server that has
+     *  died. */
+    static SocketAddress address(String spec) {
+        if (spec.matches("\\d+")) {
+            int port = Integer.parseInt(spec);
+            if (port > MAX_PORT) {
+                throw error("bad port number: %s", spec);
+            }
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                         port);
+        }
+        return UnixDomainSocketAddress.of(spec);
+    }
+
+    /** Return the address at which I listen. */
+    SocketAddress localAddress() {
+        return _address;
+    }
+
+    /** Accept connections and serve each on a thread of its own until I
+     *  am closed. */
+    void serve() {
+        while (true) {
+            SocketChannel client;
+            try {
+                client = _channel.accept();
+            } catch (ClosedChannelException excp) {
+                return;
+            } catch (IOException excp) {
+                throw error("I/O error: %s", excp.getMessage());
+            }
+            _workers.execute(() -> serve(client));
+        }
+    }
+
+    /** Stop accepting connections.  Connections already open are served
+     *  until their clients close them. */
+    @Override
+    public void close() {
+        try {
+            _channel.close();
+            if (_socketFile != null) {
+                Files.deleteIfExists(_socketFile);
+            }
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+        _workers.shutdown();
+    }
+
+    /** Delete the file at ADDRESS if it is a socket on which no server
+     *  is listening. */
+    private static void removeStale(UnixDomainSocketAddress address)
+        throws IOException {
+        Path path = address.getPath();
+        if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)
+            || !Files.readAttributes(path, BasicFileAttributes.class,
+                                     LinkOption.NOFOLLOW_LINKS).isOther()) {
+            return;
+        }
+        try {
+            SocketChannel.open(address).close();
+        } catch (IOException excp) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /** Answer the requests on CLIENT until it closes the connection. */
+    private void serve(SocketChannel client) {
+        Machine machine = _prototype.copy();
+        try (SocketChannel channel = client) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(channel), BUFFER_SIZE));
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel),
+                                         BUFFER_SIZE));
+            ChunkStream chunks = new ChunkStream(out);
+            Writer output =
+                new OutputStreamWriter(chunks, StandardCharsets.UTF_8);
+            MessageProcessor processor =
+                new MessageProcessor(machine, machine.alphabet(), output);
+            while (true) {
+                String key;
+                try {
+                    key = readText(in, in.readInt());
+                } catch (EOFException excp) {
+                    return;
+                }
+                Payload payload = new Payload(in, in.readInt());
+                try {
+                    if (!key.isEmpty()) {
+                        processor.configure(key);
+                    }
+                    process(processor, payload);
+                    output.flush();
+                    out.writeInt(0);
+                } catch (EnigmaException excp) {
+                    payload.skipRest();
+                    output.flush();
+                    out.writeInt(-1);
+                    writeText(out, excp.getMessage());
+                    processor.reset();
+                }
+                out.flush();
+            }
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Run the text of PAYLOAD through PROCESSOR. */
+    private static void process(MessageProcessor processor,
+                                Payload payload) throws IOException {
+        Reader text =
+            new InputStreamReader(payload, StandardCharsets.UTF_8);
+        char[] buf = new char[BUFFER_SIZE];
+        int n;
+        while ((n = text.read(buf)) > 0) {
+            processor.process(buf, 0, n);
+        }
+        processor.finish();
+        if (!processor.configured()) {
+            throw error("No configuration!");
+        }
+    }
+
+    /** Return the LENGTH bytes read from IN as UTF-8 text. */
+    static String readText(DataInputStream in, int length)
+        throws IOException {
+        if (length < 0 || length > MAX_KEY) {
+            throw new IOException("bad frame length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Write TEXT to OUT as UTF-8 text preceded by its length. */
+    static void writeText(DataOutputStream out, String text)
+        throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** The bytes of a payload: a stream that ends after a given number of
+     *  bytes of the connection. */
+    private static class Payload extends InputStream {
+
+        /** The next LENGTH bytes of IN. */
+        Payload(InputStream in, int length) throws IOException {
+            if (length < 0) {
+                throw new IOException("bad frame length: " + length);
+            }
+            _in = in;
+            _remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (_remaining == 0) {
+                return -1;
+            }
+            int b = _in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            _remaining -= 1;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            if (_remaining == 0) {
+                return -1;
+            }
+            int n = _in.read(buf, off, Math.min(len, _remaining));
+            if (n < 0) {
+                throw new EOFException();
+            }
+            _remaining -= n;
+            return n;
+        }
+
+        /** Read and discard the rest of my bytes. */
+        void skipRest() throws IOException {
+            byte[] buf = new byte[BUFFER_SIZE];
+            while (read(buf, 0, buf.length) > 0) {
+                continue;
+            }
+        }
+
+        /** The connection. */
+        private final InputStream _in;
+        /** Number of bytes not yet read. */
+        private int _remaining;
+    }
+
+    /** A stream that sends whatever is written to it as chunks. */
+    private static class ChunkStream extends OutputStream {
+
+        /** A stream sending chunks to OUT. */
+        ChunkStream(DataOutputStream out) {
+            _out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] buf, int off, int len) throws IOException {
+            if (len > 0) {
+                _out.writeInt(len);
+                _out.write(buf, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            _out.flush();
+        }
+
+        /** Where chunks are sent. */
+        private final DataOutputStream _out;
+    }
+
+    /** Size of the buffers used for each connection. */
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    /** Largest key or error message accepted. */
+    private static final int MAX_KEY = 1 << 16;
+
+    /** Largest TCP port number. */
+    private static final int MAX_PORT = 0xffff;
+
+    /** Machine copied for each connection. */
+    private final Machine _prototype;
+
+    /** Accepts connections. */
+    private final ServerSocketChannel _channel;
+
+    /** Address at which _channel listens. */
+    private final SocketAddress _address;
+
+    /** The file of a Unix domain socket, or null for TCP. */
+    private final Path _socketFile;
+
+    /** Runs each connection. */
+    private final ExecutorService _workers;
+}
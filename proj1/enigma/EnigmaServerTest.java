@@ -0,0 +1,201 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the EnigmaServer class.
+ *  @author Bryan Lim
+ */
+public class EnigmaServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** A configuration with the naval rotors I-V, Beta, and B. */
+    private static final String CONFIG =
+        UPPER_STRING + " 5 3\n"
+        + "I MQ " + NAVALA.get("I") + "\n"
+        + "II ME " + NAVALA.get("II") + "\n"
+        + "III MV " + NAVALA.get("III") + "\n"
+        + "IV MJ " + NAVALA.get("IV") + "\n"
+        + "V MZ " + NAVALA.get("V") + "\n"
+        + "Beta N " + NAVALA.get("Beta") + "\n"
+        + "B R " + NAVALA.get("B") + "\n";
+
+    /** Return Main's output for the input PAYLOAD, preceded by a settings
+     *  line for KEY. */
+    private String expected(String key, String payload) throws IOException {
+        StringWriter output = new StringWriter();
+        MessageProcessor processor =
+            new MessageProcessor(Main.parseConfig(CONFIG), UPPER, output);
+        processor.configure(key);
+        processor.process(payload.toCharArray(), 0, payload.length());
+        processor.finish();
+        return output.toString();
+    }
+
+    /** Return a server for CONFIG at SPEC (see EnigmaServer.address),
+     *  already serving. */
+    private EnigmaServer start(String spec) {
+        EnigmaServer server =
+            new EnigmaServer(Main.parseConfig(CONFIG),
+                             EnigmaServer.address(spec));
+        Thread thread = new Thread(server::serve);
+        thread.setDaemon(true);
+        thread.start();
+        return server;
+    }
+
+    @Test
+    public void matchesMain() throws IOException {
+        String key = "B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+        String payload = "FROM his shoulder Hiawatha\n"
+            + "Took the camera of rosewood\n\n"
+            + "* B BETA I II III AAAA ABBB\nAAAAA\n";
+        try (EnigmaServer server = start("0");
+             EnigmaClient client = new EnigmaClient(server.localAddress())) {
+            assertEquals(expected(key, payload),
+                         client.convert(key, payload));
+            assertEquals("EWTYX\n",
+                         client.convert("B BETA I II III AAAA ABBB",
+                                        "AAAAA"));
+            assertEquals("QVCWM\n", client.convert("", "AAAAA"));
+        }
+    }
+
+    @Test
+    public void errorsLeaveConnectionUsable() throws IOException {
+        String key = "B BETA I II III AAAA";
+        try (EnigmaServer server = start("0");
+             EnigmaClient client = new EnigmaClient(server.localAddress())) {
+            try {
+                client.convert("B BETA I II IX AAAA", "HELLO");
+                fail("bad rotor accepted");
+            } catch (EnigmaException excp) {
+                assertEquals("Bad rotor name", excp.getMessage());
+            }
+            try {
+                client.convert("", "HELLO");
+                fail("message without configuration accepted");
+            } catch (EnigmaException excp) {
+                assertEquals("message without a configuration",
+                             excp.getMessage());
+            }
+            assertEquals(expected(key, "HELLO"), client.convert(key, "HELLO"));
+        }
+    }
+
+    @Test
+    public void concurrentClients() throws Exception {
+        String[] rotors = {"I II III", "V IV III", "II V I"};
+        String payload = "FROMHISSHOULDERHIAWATHATOOKTHECAMERA\n";
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (EnigmaServer server = start("0")) {
+            List<CompletableFuture<Void>> clients =
+                new ArrayList<CompletableFuture<Void>>();
+            for (int c = 0; c < 8; c += 1) {
+                int first = c * 30;
+                clients.add(CompletableFuture.runAsync(() -> {
+                    try (EnigmaClient client =
+                         new EnigmaClient(server.localAddress())) {
+                        for (int k = first; k < first + 30; k += 1) {
+                            String key = "B BETA " + rotors[k % rotors.length]
+                                + " " + UPPER_STRING.substring(k % 20,
+                                                               k % 20 + 4);
+                            assertEquals(expected(key, payload),
+                                         client.convert(key, payload));
+                        }
+                    } catch (IOException excp) {
+                        throw new AssertionError(excp);
+                    }
+                }, executor));
+            }
+            for (CompletableFuture<Void> client : clients) {
+                client.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void longPayloadStreams() throws IOException {
+        String key = "B BETA III IV I AXLE";
+        StringBuilder payload = new StringBuilder();
+        for (int i = 0; i < 40000; i += 1) {
+            payload.append("FROM HIS SHOULDER HIAWATHA\n");
+        }
+        try (EnigmaServer server = start("0");
+             EnigmaClient client = new EnigmaClient(server.localAddress())) {
+            assertEquals(expected(key, payload.toString()),
+                         client.convert(key, payload.toString()));
+        }
+    }
+
+    @Test
+    public void unixDomainSocket() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path socket = dir.resolve("socket");
+        String key = "B BETA I II III AAAA";
+        try (EnigmaServer server = start(socket.toString());
+             EnigmaClient client = new EnigmaClient(server.localAddress())) {
+            assertEquals(expected(key, "HELLO WORLD"),
+                         client.convert(key, "HELLO WORLD"));
+        }
+        assertFalse("socket file left behind", Files.exists(socket));
+        Files.delete(dir);
+    }
+
+    @Test
+    public void replacesStaleSocket() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path socket = dir.resolve("socket");
+        try (ServerSocketChannel dead =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            dead.bind(UnixDomainSocketAddress.of(socket));
+        }
+        assertTrue(Files.exists(socket));
+        String key = "B BETA I II III AAAA";
+        try (EnigmaServer server = start(socket.toString());
+             EnigmaClient client = new EnigmaClient(server.localAddress())) {
+            assertEquals(expected(key, "HELLO WORLD"),
+                         client.convert(key, "HELLO WORLD"));
+            try {
+                start(socket.toString());
+                fail("took over a socket in use");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().startsWith("could not listen"));
+            }
+            assertEquals(expected(key, "HELLO WORLD"),
+                         client.convert(key, "HELLO WORLD"));
+        }
+        Files.write(socket, new byte[0]);
+        try {
+            start(socket.toString());
+            fail("bound over an ordinary file");
+        } catch (EnigmaException excp) {
+            assertTrue(Files.exists(socket));
+        }
+        Files.delete(socket);
+        Files.delete(dir);
+    }
+
+}
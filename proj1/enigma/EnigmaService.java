@@ -0,0 +1,113 @@
+package enigma;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.EnigmaException.*;
+
+/** Converts messages for many concurrent clients, each request with its
+ *  own key, on one machine configuration that is parsed only once.
+ *
+ *  The service keeps a bounded pool of copies of the configured machine,
+ *  each with its own settings parser.  A request takes a machine from
+ *  the pool, waiting if all are in use, sets it to the request's key (a
+ *  settings line, whose rotor choice and plugboard are reused without
+ *  parsing when they are the same as the machine's previous request's),
+ *  converts the message, and returns the machine to the pool.  The
+ *  methods may be called from any number of threads.
+ *  @author Bryan Lim
+ */
+class EnigmaService {
+
+    /** A service for the machine described by CONFIG, the text of a
+     *  configuration file, with a pool of POOLSIZE machines, whose
+     *  asynchronous requests run on EXECUTOR.  With many requests in
+     *  flight, an executor that starts a (virtual) thread per task suits
+     *  best, since a request may wait for a pooled machine. */
+    EnigmaService(String config, int poolSize, Executor executor) {
+        this(Main.parseConfig(config), poolSize, executor);
+    }
+
+    /** A service for the machine described by CONFIG, the text of a
+     *  configuration file, with a pool of POOLSIZE machines, whose
+     *  asynchronous requests run in the common fork-join pool. */
+    EnigmaService(String config, int poolSize) {
+        this(config, poolSize, ForkJoinPool.commonPool());
+    }
+
+    /** A service using copies of MACHINE, with a pool of POOLSIZE
+     *  machines, whose asynchronous requests run on EXECUTOR. */
+    EnigmaService(Machine machine, int poolSize, Executor executor) {
+        if (poolSize < 1) {
+            throw error("pool must hold at least one machine");
+        }
+        _alphabet = machine.alphabet();
+        _executor = executor;
+        _pool = new ArrayBlockingQueue<Pooled>(poolSize);
+        for (int i = 0; i < poolSize; i += 1) {
+            _pool.add(new Pooled(machine.copy()));
+        }
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the conversion of MESSAGE, which must consist of
+     *  characters of my alphabet, with a machine set according to
+     *  SETTINGS, a settings line without its leading '*'. */
+    String convert(String settings, String message) {
+        Pooled pooled = acquire();
+        try {
+            pooled.settings.configure(settings);
+            return pooled.machine.convert(message);
+        } finally {
+            _pool.add(pooled);
+        }
+    }
+
+    /** Return a future for the result of convert(SETTINGS, MESSAGE),
+     *  computed on my executor. */
+    CompletableFuture<String> convertAsync(String settings, String message) {
+        return CompletableFuture.supplyAsync(() -> convert(settings, message),
+                                             _executor);
+    }
+
+    /** Return a machine from my pool, waiting until one is free. */
+    private Pooled acquire() {
+        try {
+            return _pool.take();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted while waiting for a machine");
+        }
+    }
+
+    /** A pooled machine with the parser that sets it. */
+    private static class Pooled {
+
+        /** A pool entry for MACHINE. */
+        Pooled(Machine machine) {
+            this.machine = machine;
+            settings = new SettingsParser(machine);
+        }
+
+        /** The machine. */
+        final Machine machine;
+        /** Applies settings lines to machine. */
+        final SettingsParser settings;
+    }
+
+    /** Alphabet of the machines. */
+    private final Alphabet _alphabet;
+
+    /** Runs asynchronous requests. */
+    private final Executor _executor;
+
+    /** Machines not in use. */
+    private final BlockingQueue<Pooled> _pool;
+}
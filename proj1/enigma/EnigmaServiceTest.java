@@ -0,0 +1,81 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the EnigmaService class.
+ *  @author Bryan Lim
+ */
+public class EnigmaServiceTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** A configuration with the naval rotors I-V, Beta, and B. */
+    private static final String CONFIG =
+        UPPER_STRING + " 5 3\n"
+        + "I MQ " + NAVALA.get("I") + "\n"
+        + "II ME " + NAVALA.get("II") + "\n"
+        + "III MV " + NAVALA.get("III") + "\n"
+        + "IV MJ " + NAVALA.get("IV") + "\n"
+        + "V MZ " + NAVALA.get("V") + "\n"
+        + "Beta N " + NAVALA.get("Beta") + "\n"
+        + "B R " + NAVALA.get("B") + "\n";
+
+    /** Return the conversion of MESSAGE by a fresh machine set to
+     *  SETTINGS. */
+    private String expected(String settings, String message) {
+        Machine machine = Main.parseConfig(CONFIG);
+        new SettingsParser(machine).configure(settings);
+        return machine.convert(message);
+    }
+
+    @Test
+    public void matchesFreshMachine() {
+        EnigmaService service = new EnigmaService(CONFIG, 1);
+        String[] keys = {"B BETA I II III AAAA", "B BETA III IV V QEVZ (AB)",
+                         "B BETA I II III AAAA (AB) (CD)"};
+        String message = "HELLOWORLDTHEQUICKBROWNFOX";
+        for (String key : keys) {
+            assertEquals(expected(key, message),
+                         service.convert(key, message));
+        }
+    }
+
+    @Test
+    public void concurrentRequests() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            EnigmaService service = new EnigmaService(CONFIG, 4, executor);
+            String[] rotors = {"I II III", "V IV III", "II V I"};
+            String message = "FROMHISSHOULDERHIAWATHATOOKTHECAMERA";
+            List<String> keys = new ArrayList<String>();
+            List<CompletableFuture<String>> results =
+                new ArrayList<CompletableFuture<String>>();
+            for (int i = 0; i < 300; i += 1) {
+                String key = "B BETA " + rotors[i % rotors.length] + " "
+                    + UPPER_STRING.substring(i % 20, i % 20 + 4);
+                keys.add(key);
+                results.add(service.convertAsync(key, message));
+            }
+            for (int i = 0; i < keys.size(); i += 1) {
+                assertEquals(expected(keys.get(i), message),
+                             results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,452 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Objects;
+import java.util.Random;
+import java.util.stream.LongStream;
+
+import static enigma.TestUtils.*;
+
+/** Randomized differential tests of the ways of converting text through
+ *  a machine.  Each trial draws a random configuration (see
+ *  TestUtils.randomConfig) and a random message from a seed, converts the
+ *  message with a TestUtils.ReferenceMachine, and checks every path
+ *  against it: single characters, batches of indices, characters and
+ *  bytes cut at random places, StreamingCipher, ByteMachine, press,
+ *  skip, snapshot and restore, copy, and keystreams.  Trials run in
+ *  parallel.  The
+ *  failure reported is the first divergence in the trial with the
+ *  smallest seed, along with the configuration, so that it can be
+ *  reproduced.
+ *
+ *  The unit test runs a few dozen short trials.  For longer runs, use
+ *      java enigma.FuzzTest TRIALS LENGTH [FIRST-SEED]
+ *  @author Bryan Lim
+ */
+public class FuzzTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void pathsMatchReference() {
+        String failure = run(0, TRIALS, LENGTH);
+        assertNull(failure, failure);
+    }
+
+    /** Run trials of LENGTH characters with seeds FIRST .. FIRST+TRIALS-1
+     *  in parallel, and return a description of the first divergence in
+     *  the failing trial with the smallest seed, or null if none
+     *  fails. */
+    static String run(long first, long trials, int length) {
+        return LongStream.range(first, first + trials).parallel()
+            .mapToObj(seed -> trial(seed, length))
+            .filter(Objects::nonNull).findFirst().orElse(null);
+    }
+
+    /** Run the trial with seed SEED on a message of LENGTH characters,
+     *  returning a description of its first divergence, or null. */
+    static String trial(long seed, int length) {
+        Random random = new Random(seed);
+        RandomConfig config = randomConfig(random);
+        int size = config.alphabet.length();
+        int[] message = new int[length];
+        for (int i = 0; i < length; i += 1) {
+            message[i] = random.nextInt(size);
+        }
+        int[] expected = new int[length];
+        ReferenceMachine reference = config.reference();
+        for (int i = 0; i < length; i += 1) {
+            expected[i] = reference.convert(message[i]);
+        }
+        String[] failure = {
+            checkSingle(config, message, expected),
+            checkBatches(config, message, expected, random),
+            checkChars(config, message, expected, random),
+            checkBytes(config, message, expected, random),
+            checkStreaming(config, message, expected, random),
+            checkPress(config, length),
+            checkSkip(config, message, random),
+            checkSnapshot(config, message, expected, random),
+            checkCopy(config, message, expected, random),
+            checkKeystream(config, message, expected, random),
+        };
+        for (String f : failure) {
+            if (f != null) {
+                return String.format("seed %d: %s%nconfiguration:%n%s",
+                                     seed, f, config);
+            }
+        }
+        return null;
+    }
+
+    /** Check convert(int) for each character of MESSAGE against
+     *  EXPECTED, on a machine configured by CONFIG. */
+    private static String checkSingle(RandomConfig config, int[] message,
+                                      int[] expected) {
+        Machine machine = config.machine();
+        for (int i = 0; i < message.length; i += 1) {
+            int c = machine.convert(message[i]);
+            if (c != expected[i]) {
+                return diverged("convert(int)", i, expected[i], c);
+            }
+        }
+        return null;
+    }
+
+    /** Check convert(int[], ...) on MESSAGE against EXPECTED, converting
+     *  runs of random length chosen using RANDOM, with single characters
+     *  converted between some of them. */
+    private static String checkBatches(RandomConfig config, int[] message,
+                                       int[] expected, Random random) {
+        Machine machine = config.machine();
+        int[] buf = message.clone();
+        for (int i = 0; i < buf.length;) {
+            if (random.nextInt(4) == 0) {
+                buf[i] = machine.convert(buf[i]);
+                i += 1;
+            } else {
+                int n = Math.min(buf.length - i, chunk(random));
+                machine.convert(buf, i, n);
+                i += n;
+            }
+        }
+        return compare("convert(int[])", expected, buf);
+    }
+
+    /** Check convert(char[], ...) on MESSAGE against EXPECTED, in pieces
+     *  cut at places chosen using RANDOM. */
+    private static String checkChars(RandomConfig config, int[] message,
+                                     int[] expected, Random random) {
+        Machine machine = config.machine();
+        char[] in = new char[message.length];
+        for (int i = 0; i < in.length; i += 1) {
+            in[i] = config.alphabet.charAt(message[i]);
+        }
+        char[] out = new char[in.length];
+        for (int i = 0; i < in.length;) {
+            int n = Math.min(in.length - i, chunk(random));
+            machine.convert(in, i, n, out);
+            i += n;
+        }
+        int[] result = new int[out.length];
+        for (int i = 0; i < out.length; i += 1) {
+            result[i] = config.alphabet.indexOf(out[i]);
+        }
+        return compare("convert(char[])", expected, result);
+    }
+
+    /** Check the byte paths on MESSAGE against EXPECTED, in pieces cut at
+     *  places chosen using RANDOM: ByteMachine if CONFIG's alphabet has a
+     *  character for every byte, and otherwise convert(byte[], ...),
+     *  whose bytes are characters. */
+    private static String checkBytes(RandomConfig config, int[] message,
+                                     int[] expected, Random random) {
+        Machine machine = config.machine();
+        byte[] buf = new byte[message.length];
+        int[] result = new int[message.length];
+        if (config.alphabet.length() == BYTE_SYMBOLS) {
+            ByteMachine bytes = new ByteMachine(machine);
+            for (int i = 0; i < buf.length; i += 1) {
+                buf[i] = (byte) message[i];
+            }
+            for (int i = 0; i < buf.length;) {
+                int n = Math.min(buf.length - i, chunk(random));
+                bytes.convert(buf, i, n);
+                i += n;
+            }
+            for (int i = 0; i < buf.length; i += 1) {
+                result[i] = buf[i] & (BYTE_SYMBOLS - 1);
+            }
+            return compare("ByteMachine", expected, result);
+        }
+        for (int i = 0; i < buf.length; i += 1) {
+            buf[i] = (byte) config.alphabet.charAt(message[i]);
+        }
+        for (int i = 0; i < buf.length;) {
+            int n = Math.min(buf.length - i, chunk(random));
+            machine.convert(buf, i, n, buf);
+            i += n;
+        }
+        for (int i = 0; i < buf.length; i += 1) {
+            result[i] = config.alphabet.indexOf(
+                (char) (buf[i] & (BYTE_SYMBOLS - 1)));
+        }
+        return compare("convert(byte[])", expected, result);
+    }
+
+    /** Check a StreamingCipher with a random group size on MESSAGE, with
+     *  blanks and newlines scattered through it, fed in chunks cut at
+     *  places chosen using RANDOM.  The output must be EXPECTED,
+     *  grouped as MessageProcessor would. */
+    private static String checkStreaming(RandomConfig config, int[] message,
+                                         int[] expected, Random random) {
+        int groupSize = 1 + random.nextInt(2 * GroupFormatter.GROUP_SIZE);
+        StreamingCipher cipher =
+            new StreamingCipher(config.machine(), groupSize);
+        StringBuilder text = new StringBuilder();
+        StringBuilder want = new StringBuilder();
+        int group = 0;
+        for (int i = 0; i < message.length; i += 1) {
+            int blank = random.nextInt(2 * SEPARATOR_ODDS);
+            if (blank == 0) {
+                text.append('\n');
+                want.append('\n');
+                group = 0;
+            } else if (blank == 1) {
+                text.append(' ');
+            }
+            if (group == groupSize) {
+                want.append(' ');
+                group = 0;
+            }
+            text.append(config.alphabet.charAt(message[i]));
+            want.append(config.alphabet.charAt(expected[i]));
+            group += 1;
+        }
+        char[] in = text.toString().toCharArray();
+        char[] out = new char[StreamingCipher.maxOutput(in.length)];
+        int written = 0;
+        for (int i = 0; i < in.length;) {
+            int n = Math.min(in.length - i, chunk(random));
+            written += cipher.update(in, i, n, out, written);
+            i += n;
+        }
+        String got = new String(out, 0, written);
+        for (int i = 0; i < want.length(); i += 1) {
+            if (i >= got.length() || got.charAt(i) != want.charAt(i)) {
+                return String.format("StreamingCipher: output differs at "
+                                     + "offset %d (group size %d)",
+                                     i, groupSize);
+            }
+        }
+        if (got.length() != want.length()) {
+            return String.format("StreamingCipher: %d characters of "
+                                 + "output, expected %d",
+                                 got.length(), want.length());
+        }
+        return null;
+    }
+
+    /** Check press against the reference for the first presses of a
+     *  message of LENGTH characters, on a machine configured by
+     *  CONFIG. */
+    private static String checkPress(RandomConfig config, int length) {
+        Machine machine = config.machine();
+        ReferenceMachine reference = config.reference();
+        int size = config.alphabet.length();
+        int[] want = new int[size], got = new int[size];
+        for (int i = 0; i < Math.min(length, MAX_PRESSES); i += 1) {
+            reference.press(want);
+            machine.press(got);
+            for (int c = 0; c < size; c += 1) {
+                if (got[c] != want[c]) {
+                    return String.format("press: on press %d, rotors "
+                                         + "convert %d to %d, expected %d",
+                                         i, c, got[c], want[c]);
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Check skip while converting MESSAGE: at random places chosen
+     *  using RANDOM, skip a random number of presses on a machine and
+     *  step the reference as many times.  The two must convert the
+     *  following characters alike. */
+    private static String checkSkip(RandomConfig config, int[] message,
+                                    Random random) {
+        Machine machine = config.machine();
+        ReferenceMachine reference = config.reference();
+        int size = config.alphabet.length();
+        for (int i = 0; i < message.length; i += 1) {
+            if (random.nextInt(SKIP_ODDS) == 0) {
+                int presses = random.nextInt(size * size + 1);
+                machine.skip(presses);
+                for (int k = 0; k < presses; k += 1) {
+                    reference.step();
+                }
+            }
+            int want = reference.convert(message[i]);
+            int got = machine.convert(message[i]);
+            if (got != want) {
+                return diverged("skip", i, want, got);
+            }
+        }
+        return null;
+    }
+
+    /** Check snapshot and restore: convert MESSAGE up to a place chosen
+     *  using RANDOM, take a snapshot, convert the rest, restore, and
+     *  convert the rest again.  Both conversions of the rest must match
+     *  EXPECTED. */
+    private static String checkSnapshot(RandomConfig config, int[] message,
+                                        int[] expected, Random random) {
+        Machine machine = config.machine();
+        int mark = random.nextInt(message.length + 1);
+        int[] buf = message.clone();
+        machine.convert(buf, 0, mark);
+        Machine.State saved = machine.snapshot();
+        for (int pass = 0; pass < 2; pass += 1) {
+            int[] rest = message.clone();
+            machine.convert(rest, mark, rest.length - mark);
+            System.arraycopy(buf, 0, rest, 0, mark);
+            String failure = compare(pass == 0 ? "snapshot" : "restore",
+                                     expected, rest);
+            if (failure != null) {
+                return failure;
+            }
+            machine.restore(saved);
+        }
+        return null;
+    }
+
+    /** Check copy: convert MESSAGE up to a place chosen using RANDOM,
+     *  copy the machine, and convert the rest a character at a time on
+     *  the original and the copy alternately.  Both must match
+     *  EXPECTED. */
+    private static String checkCopy(RandomConfig config, int[] message,
+                                    int[] expected, Random random) {
+        Machine machine = config.machine();
+        int mark = random.nextInt(message.length + 1);
+        int[] buf = message.clone();
+        machine.convert(buf, 0, mark);
+        Machine copy = machine.copy();
+        for (int i = mark; i < message.length; i += 1) {
+            int c = machine.convert(message[i]);
+            if (c != expected[i]) {
+                return diverged("original after copy", i, expected[i], c);
+            }
+            c = copy.convert(message[i]);
+            if (c != expected[i]) {
+                return diverged("copy", i, expected[i], c);
+            }
+        }
+        return null;
+    }
+
+    /** Check convert(int[], ...) on MESSAGE against EXPECTED, as in
+     *  checkBatches, on a machine with a keystream cache, and check that
+     *  its settings and counts of rotor steps and carries end up as
+     *  those of a machine without one. */
+    private static String checkKeystream(RandomConfig config,
+                                         int[] message, int[] expected,
+                                         Random random) {
+        Machine machine = config.machine();
+        machine.setKeystreamCache(new KeystreamCache(KEYSTREAM_BUDGET));
+        Machine plain = config.machine();
+        int[] buf = message.clone(), other = message.clone();
+        for (int i = 0; i < buf.length;) {
+            if (random.nextInt(SEPARATOR_ODDS) == 0) {
+                buf[i] = machine.convert(buf[i]);
+                plain.convert(message[i]);
+                i += 1;
+            } else {
+                int n = Math.min(buf.length - i, chunk(random));
+                machine.convert(buf, i, n);
+                plain.convert(other, i, n);
+                i += n;
+            }
+        }
+        String failure = compare("keystream", expected, buf);
+        if (failure != null) {
+            return failure;
+        }
+        for (int i = 0; i < config.numRotors(); i += 1) {
+            if (machine.setting(i) != plain.setting(i)) {
+                return String.format("keystream: slot %d at %d, expected "
+                                     + "%d", i, machine.setting(i),
+                                     plain.setting(i));
+            }
+        }
+        if (machine.rotorSteps() != plain.rotorSteps()
+            || machine.carries() != plain.carries()) {
+            return String.format("keystream: %d steps and %d carries, "
+                                 + "expected %d and %d",
+                                 machine.rotorSteps(), machine.carries(),
+                                 plain.rotorSteps(), plain.carries());
+        }
+        return null;
+    }
+
+    /** Return a random chunk length chosen using RANDOM: usually short,
+     *  sometimes longer than a machine's internal batches. */
+    private static int chunk(Random random) {
+        if (random.nextInt(SEPARATOR_ODDS) == 0) {
+            return 1 + random.nextInt(LONG_CHUNK);
+        }
+        return 1 + random.nextInt(SHORT_CHUNK);
+    }
+
+    /** Return a description of the first place where GOT differs from
+     *  WANT, as produced by PATH, or null if they are the same. */
+    private static String compare(String path, int[] want, int[] got) {
+        for (int i = 0; i < want.length; i += 1) {
+            if (got[i] != want[i]) {
+                return diverged(path, i, want[i], got[i]);
+            }
+        }
+        return null;
+    }
+
+    /** Return a description of PATH converting character #I to GOT rather
+     *  than WANT. */
+    private static String diverged(String path, int i, int want, int got) {
+        return String.format("%s: character %d converted to %d, "
+                             + "expected %d", path, i, got, want);
+    }
+
+    /** Run TRIALS trials of LENGTH characters each, starting from seed
+     *  FIRST-SEED (default 0), given in that order in ARGS, and report
+     *  the first failure. */
+    public static void main(String... args) {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: java enigma.FuzzTest TRIALS LENGTH "
+                               + "[FIRST-SEED]");
+            System.exit(1);
+        }
+        long trials = Long.parseLong(args[0]);
+        int length = Integer.parseInt(args[1]);
+        long first = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        long start = System.nanoTime();
+        String failure = run(first, trials, length);
+        double seconds = (System.nanoTime() - start) * 1e-9;
+        System.out.printf("%d trials of %d characters in %.1f s%n",
+                          trials, length, seconds);
+        if (failure != null) {
+            System.out.println(failure);
+            System.exit(1);
+        }
+        System.out.println("No divergences.");
+    }
+
+    /** Number of trials run by the unit test. */
+    private static final int TRIALS = 60;
+
+    /** Number of characters in each trial of the unit test. */
+    private static final int LENGTH = 1000;
+
+    /** Budget of the keystream cache used by checkKeystream, in
+     *  bytes. */
+    private static final long KEYSTREAM_BUDGET = 1 << 20;
+
+    /** Largest number of presses checked by checkPress. */
+    private static final int MAX_PRESSES = 500;
+
+    /** One chunk in SEPARATOR_ODDS is long, and about one character in
+     *  SEPARATOR_ODDS of a streamed message is preceded by a newline or
+     *  blank. */
+    private static final int SEPARATOR_ODDS = 8;
+
+    /** Chunks are usually at most SHORT_CHUNK characters, otherwise at
+     *  most LONG_CHUNK. */
+    private static final int SHORT_CHUNK = 40, LONG_CHUNK = 10000;
+
+    /** One character in SKIP_ODDS is preceded by a skip. */
+    private static final int SKIP_ODDS = 200;
+}
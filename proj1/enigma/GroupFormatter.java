@@ -0,0 +1,241 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import static enigma.EnigmaException.*;
+
+/** Prints the converted letters of message lines, given as alphabet
+ *  indices, in groups of a fixed size separated by blanks.  Each message
+ *  line ends with a newline; if a line width is set, a long message line
+ *  is also broken between groups so that no printed line holds more
+ *  characters than that (or more than one group, if a group is wider).
+ *  Output is collected in a reusable buffer and written when the buffer
+ *  fills or on flush().
+ *  @author Bryan Lim
+ */
+abstract class GroupFormatter {
+
+    /** A formatter printing the characters of ALPHABET in groups of
+     *  GROUPSIZE letters on lines of at most LINEWIDTH characters, or of
+     *  any length if LINEWIDTH is 0. */
+    GroupFormatter(Alphabet alphabet, int groupSize, int lineWidth) {
+        if (groupSize < 1) {
+            throw error("group size must be positive");
+        }
+        if (lineWidth < 0) {
+            throw error("line width must not be negative");
+        }
+        _groupSize = groupSize;
+        if (lineWidth == 0) {
+            _groupsPerLine = Integer.MAX_VALUE;
+        } else {
+            _groupsPerLine =
+                (int) Math.max(1, (lineWidth + 1L) / (groupSize + 1L));
+        }
+        _letters = new char[alphabet.size()];
+        for (int i = 0; i < _letters.length; i += 1) {
+            _letters[i] = alphabet.toChar(i);
+        }
+    }
+
+    /** Return a formatter that prints the characters of ALPHABET to
+     *  OUTPUT, in groups of GROUPSIZE letters on lines of at most
+     *  LINEWIDTH characters (any length if LINEWIDTH is 0). */
+    static GroupFormatter of(Writer output, Alphabet alphabet,
+                             int groupSize, int lineWidth) {
+        return new CharFormatter(output, alphabet, groupSize, lineWidth);
+    }
+
+    /** Return a formatter that prints the characters of ALPHABET to
+     *  OUTPUT a byte each, the byte being the character's code, in
+     *  groups of GROUPSIZE letters on lines of at most LINEWIDTH
+     *  characters (any length if LINEWIDTH is 0).  Every character of
+     *  ALPHABET must have a code below 256. */
+    static GroupFormatter of(WritableByteChannel output, Alphabet alphabet,
+                             int groupSize, int lineWidth) {
+        return new ByteFormatter(output, alphabet, groupSize, lineWidth);
+    }
+
+    /** Print the letters whose indices are BUF[OFF .. OFF+LEN-1] as the
+     *  continuation of the current message line. */
+    final void print(int[] buf, int off, int len) throws IOException {
+        char[] letters = _letters;
+        int size = _groupSize, group = _groupLength;
+        for (int i = off, end = off + len; i < end; i += 1) {
+            if (group == size) {
+                put(separator());
+                group = 0;
+            }
+            put(letters[buf[i]]);
+            group += 1;
+        }
+        _groupLength = group;
+    }
+
+    /** End the current message line. */
+    final void endLine() throws IOException {
+        put('\n');
+        _groupLength = 0;
+        _lineGroups = 1;
+    }
+
+    /** Drop all output not yet written, and start a new message line. */
+    final void discard() {
+        clear();
+        _groupLength = 0;
+        _lineGroups = 1;
+    }
+
+    /** Return the number of letters printed so far in the current
+     *  group. */
+    final int groupLength() {
+        return _groupLength;
+    }
+
+    /** Add C to the pending output, writing what is pending first if
+     *  there is no room for it. */
+    abstract void put(char c) throws IOException;
+
+    /** Write all pending output. */
+    abstract void flush() throws IOException;
+
+    /** Drop all pending output. */
+    abstract void clear();
+
+    /** Return the character that separates the group just finished from
+     *  the next one on the same message line. */
+    private char separator() {
+        if (_lineGroups == _groupsPerLine) {
+            _lineGroups = 1;
+            return '\n';
+        }
+        _lineGroups += 1;
+        return ' ';
+    }
+
+    /** Number of letters in each printed group. */
+    static final int GROUP_SIZE = 5;
+
+    /** Size of the output buffers, in characters. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** The character with each index. */
+    private final char[] _letters;
+
+    /** Number of letters in a group. */
+    private final int _groupSize;
+
+    /** Maximum number of groups on a printed line. */
+    private final int _groupsPerLine;
+
+    /** Number of groups begun on the current printed line. */
+    private int _lineGroups = 1;
+
+    /** Number of letters printed so far in the current group. */
+    private int _groupLength;
+
+    /** A GroupFormatter writing characters to a Writer. */
+    private static final class CharFormatter extends GroupFormatter {
+
+        /** A formatter printing the characters of ALPHABET to OUTPUT in
+         *  groups of GROUPSIZE on lines of at most LINEWIDTH. */
+        CharFormatter(Writer output, Alphabet alphabet, int groupSize,
+                      int lineWidth) {
+            super(alphabet, groupSize, lineWidth);
+            _output = output;
+        }
+
+        @Override
+        void put(char c) throws IOException {
+            if (_length == _buffer.length) {
+                flush();
+            }
+            _buffer[_length] = c;
+            _length += 1;
+        }
+
+        @Override
+        void flush() throws IOException {
+            _output.write(_buffer, 0, _length);
+            _length = 0;
+        }
+
+        @Override
+        void clear() {
+            _length = 0;
+        }
+
+        /** Destination of my output. */
+        private final Writer _output;
+
+        /** Output not yet written to _output. */
+        private final char[] _buffer = new char[BUFFER_SIZE];
+
+        /** Number of characters in _buffer. */
+        private int _length;
+    }
+
+    /** A GroupFormatter writing a byte per character to a channel, so
+     *  that the output needs no encoding.  Output is collected in an
+     *  array and copied in bulk into a reusable direct buffer, from which
+     *  the channel writes without further copying. */
+    private static final class ByteFormatter extends GroupFormatter {
+
+        /** A formatter printing the characters of ALPHABET to OUTPUT in
+         *  groups of GROUPSIZE on lines of at most LINEWIDTH. */
+        ByteFormatter(WritableByteChannel output, Alphabet alphabet,
+                      int groupSize, int lineWidth) {
+            super(alphabet, groupSize, lineWidth);
+            for (int i = 0; i < alphabet.size(); i += 1) {
+                char c = alphabet.toChar(i);
+                if (c > MAX_BYTE) {
+                    throw error("character %c does not fit in a byte", c);
+                }
+            }
+            _output = output;
+        }
+
+        @Override
+        void put(char c) throws IOException {
+            if (_length == _bytes.length) {
+                flush();
+            }
+            _bytes[_length] = (byte) c;
+            _length += 1;
+        }
+
+        @Override
+        void flush() throws IOException {
+            _buffer.clear();
+            _buffer.put(_bytes, 0, _length).flip();
+            while (_buffer.hasRemaining()) {
+                _output.write(_buffer);
+            }
+            _length = 0;
+        }
+
+        @Override
+        void clear() {
+            _length = 0;
+        }
+
+        /** Largest character code that fits in a byte. */
+        private static final int MAX_BYTE = 0xff;
+
+        /** Destination of my output. */
+        private final WritableByteChannel _output;
+
+        /** Output not yet copied to _buffer. */
+        private final byte[] _bytes = new byte[BUFFER_SIZE];
+
+        /** Number of bytes in _bytes. */
+        private int _length;
+
+        /** Output being written to _output. */
+        private final ByteBuffer _buffer =
+            ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+}
@@ -0,0 +1,146 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the GroupFormatter class.
+ *  @author Bryan Lim
+ */
+public class GroupFormatterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return the indices in UPPER of the letters of S. */
+    private int[] indices(String s) {
+        int[] result = new int[s.length()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = UPPER.toInt(s.charAt(i));
+        }
+        return result;
+    }
+
+    /** Return the output of a formatter printing groups of GROUPSIZE on
+     *  lines of at most LINEWIDTH, writing bytes iff BYTES, given each
+     *  of LINES as a message line, each passed in pieces of at most
+     *  PIECE letters. */
+    private String format(boolean bytes, int groupSize, int lineWidth,
+                          int piece, String... lines) throws IOException {
+        StringWriter chars = new StringWriter();
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        GroupFormatter formatter =
+            bytes ? GroupFormatter.of(Channels.newChannel(sink), UPPER,
+                                      groupSize, lineWidth)
+            : GroupFormatter.of(chars, UPPER, groupSize, lineWidth);
+        for (String line : lines) {
+            int[] letters = indices(line);
+            for (int i = 0; i < letters.length; i += piece) {
+                formatter.print(letters, i,
+                                Math.min(piece, letters.length - i));
+            }
+            formatter.endLine();
+        }
+        formatter.flush();
+        return bytes ? sink.toString(StandardCharsets.ISO_8859_1)
+            : chars.toString();
+    }
+
+    /** Check that both kinds of formatter, given LINES in pieces of
+     *  every length up to 7, produce EXPECTED with groups of GROUPSIZE on
+     *  lines of at most LINEWIDTH. */
+    private void checkFormat(String expected, int groupSize, int lineWidth,
+                             String... lines) throws IOException {
+        for (int piece = 1; piece <= 7; piece += 1) {
+            assertEquals(expected,
+                         format(false, groupSize, lineWidth, piece, lines));
+            assertEquals(expected,
+                         format(true, groupSize, lineWidth, piece, lines));
+        }
+    }
+
+    @Test
+    public void groupsOfFive() throws IOException {
+        checkFormat("HELLO WORLD\nABCDE FGHIJ K\n\nXY\n",
+                    GroupFormatter.GROUP_SIZE, 0,
+                    "HELLOWORLD", "ABCDEFGHIJK", "", "XY");
+    }
+
+    @Test
+    public void otherGroupSizes() throws IOException {
+        checkFormat("ABC DEF G\nHI\n", 3, 0, "ABCDEFG", "HI");
+        checkFormat("A B C\n", 1, 0, "ABC");
+        checkFormat("ABCDEFGHIJ\n", 100, 0, "ABCDEFGHIJ");
+    }
+
+    @Test
+    public void wrapsLines() throws IOException {
+        checkFormat("ABC DEF\nGHI J\nKLM\n", 3, 7, "ABCDEFGHIJ", "KLM");
+        checkFormat("ABC DEF\nGHI J\n", 3, 8, "ABCDEFGHIJ");
+        checkFormat("ABC\nDEF\nG\n", 3, 2, "ABCDEFG");
+        checkFormat("ABCDE FGHIJ\nKLMNO PQRST\n",
+                    GroupFormatter.GROUP_SIZE, 11, "ABCDEFGHIJKLMNOPQRST");
+    }
+
+    @Test
+    public void fillsBuffersRepeatedly() throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 3 * GroupFormatter.BUFFER_SIZE; i += 1) {
+            line.append(UPPER.toChar(i % UPPER.size()));
+        }
+        String text = line.toString();
+        String expected = format(false, GroupFormatter.GROUP_SIZE, 0,
+                                 text.length(), text, text);
+        assertEquals(2 * (text.length() + (text.length() + 4) / 5),
+                     expected.length());
+        assertEquals(expected, format(true, GroupFormatter.GROUP_SIZE, 0,
+                                      text.length(), text, text));
+        assertEquals(expected, format(true, GroupFormatter.GROUP_SIZE, 0,
+                                      4093, text, text));
+    }
+
+    @Test
+    public void discardsUnwrittenOutput() throws IOException {
+        StringWriter chars = new StringWriter();
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        GroupFormatter[] formatters = {
+            GroupFormatter.of(chars, UPPER, 3, 0),
+            GroupFormatter.of(Channels.newChannel(sink), UPPER, 3, 0)
+        };
+        for (GroupFormatter formatter : formatters) {
+            formatter.print(indices("ABCDEFG"), 0, 7);
+            formatter.endLine();
+            formatter.flush();
+            formatter.print(indices("HIJK"), 0, 4);
+            formatter.discard();
+            formatter.print(indices("LMNO"), 0, 4);
+            formatter.endLine();
+            formatter.flush();
+        }
+        assertEquals("ABC DEF G\nLMN O\n", chars.toString());
+        assertEquals("ABC DEF G\nLMN O\n",
+                     sink.toString(StandardCharsets.ISO_8859_1));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void rejectsWideCharacters() {
+        GroupFormatter.of(Channels.newChannel(new ByteArrayOutputStream()),
+                          new Alphabet("AB\u0100"), 5, 0);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void rejectsEmptyGroups() {
+        GroupFormatter.of(new StringWriter(), UPPER, 0, 0);
+    }
+
+}
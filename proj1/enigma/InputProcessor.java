@@ -0,0 +1,25 @@
+package enigma;
+
+import java.io.IOException;
+
+/** Runs the text of an input file, a buffer at a time, through an Enigma
+ *  machine, writing the converted messages somewhere.  A line whose first
+ *  non-blank character is '*' holds settings for the messages that
+ *  follow it.
+ *  @author Bryan Lim
+ */
+interface InputProcessor {
+
+    /** Process the LEN characters of BUF starting at OFF. */
+    void process(char[] buf, int off, int len) throws IOException;
+
+    /** Finish the current line, if any, and write all pending output. */
+    void finish() throws IOException;
+
+    /** Return true iff some settings line has been read. */
+    boolean configured();
+
+    /** Record my work in METRICS from now on (or in nothing, if it is
+     *  null). */
+    void setMetrics(Metrics metrics);
+}
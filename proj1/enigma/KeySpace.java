@@ -0,0 +1,190 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/** The keys of a machine configuration, as tried by the attacks on it
+ *  (CribSearch, Bombe and CiphertextAttack): every rotor order the
+ *  configuration allows with every setting of the rotors.
+ *
+ *  Keys are numbered: key K uses rotor order K / S and the K % S-th
+ *  setting, where S is the number of settings of one order.  A range of
+ *  keys is tried by a Task, which splits it across a fork-join pool.
+ *  @author Bryan Lim
+ */
+class KeySpace {
+
+    /** The keys of the rotors and slots of MACHINE. */
+    KeySpace(Machine machine) {
+        _alphabet = machine.alphabet();
+        _orders = rotorOrders(machine);
+        long settings = 1;
+        for (int i = 1; i < machine.numRotors(); i += 1) {
+            settings = Math.multiplyExact(settings, _alphabet.size());
+        }
+        _settings = settings;
+        _size = Math.multiplyExact((long) _orders.size(), settings);
+    }
+
+    /** Return the rotor orders, each giving the names of the rotors to
+     *  insert, reflector first.  The leftmost slot holds a reflector,
+     *  the rightmost numPawls() slots hold moving rotors, and the slots
+     *  between hold rotors that neither move nor reflect. */
+    List<String[]> orders() {
+        return Collections.unmodifiableList(_orders);
+    }
+
+    /** Return the number of keys. */
+    long size() {
+        return _size;
+    }
+
+    /** Set MACHINE, whose rotors are in rotor order ORDER (or -1 if none
+     *  are inserted), to key KEY, storing the setting in SETTING, and
+     *  return the key's rotor order. */
+    int set(Machine machine, long key, int order, int[] setting) {
+        int size = _alphabet.size();
+        int keyOrder = (int) (key / _settings);
+        if (keyOrder != order) {
+            machine.insertRotors(_orders.get(keyOrder));
+        }
+        long rest = key % _settings;
+        for (int i = setting.length - 1; i >= 0; i -= 1) {
+            setting[i] = (int) (rest % size);
+            rest /= size;
+        }
+        machine.setRotors(setting);
+        return keyOrder;
+    }
+
+    /** Return a settings line (without '*' or plugboard) inserting the
+     *  rotors in rotor order ORDER and setting them to SETTING. */
+    StringBuilder describe(int order, int[] setting) {
+        StringBuilder result =
+            new StringBuilder(String.join(" ", _orders.get(order)));
+        result.append(' ');
+        for (int s : setting) {
+            result.append(_alphabet.toChar(s));
+        }
+        return result;
+    }
+
+    /** Return every allowed order of the rotors available to MACHINE
+     *  (see orders()). */
+    static List<String[]> rotorOrders(Machine machine) {
+        List<Rotor> reflectors = new ArrayList<Rotor>();
+        List<Rotor> fixed = new ArrayList<Rotor>();
+        List<Rotor> moving = new ArrayList<Rotor>();
+        for (Rotor rotor : machine.availableRotors()) {
+            if (rotor.reflecting()) {
+                reflectors.add(rotor);
+            } else if (rotor.rotates()) {
+                moving.add(rotor);
+            } else {
+                fixed.add(rotor);
+            }
+        }
+        Comparator<Rotor> byName = Comparator.comparing(Rotor::name);
+        reflectors.sort(byName);
+        fixed.sort(byName);
+        moving.sort(byName);
+        int n = machine.numRotors(), pawls = machine.numPawls();
+        List<String[]> result = new ArrayList<String[]>();
+        String[] order = new String[n];
+        for (Rotor reflector : reflectors) {
+            order[0] = reflector.name();
+            fill(order, 1, n - pawls, fixed, moving, result);
+        }
+        return result;
+    }
+
+    /** Fill slots I and up of ORDER with every arrangement of distinct
+     *  rotors from FIXED (for slots before FIRSTMOVING) and MOVING (for
+     *  the rest), adding a copy of each complete order to RESULT. */
+    private static void fill(String[] order, int i, int firstMoving,
+                             List<Rotor> fixed, List<Rotor> moving,
+                             List<String[]> result) {
+        if (i == order.length) {
+            result.add(order.clone());
+            return;
+        }
+        List<Rotor> choices = i < firstMoving ? fixed : moving;
+        for (Rotor rotor : choices) {
+            String name = rotor.name();
+            boolean used = false;
+            for (int j = 1; j < i; j += 1) {
+                used |= order[j].equals(name);
+            }
+            if (!used) {
+                order[i] = name;
+                fill(order, i + 1, firstMoving, fixed, moving, result);
+            }
+        }
+    }
+
+    /** Return LEFT followed by RIGHT, reusing LEFT unless it is
+     *  empty. */
+    static <E> List<E> concat(List<E> left, List<E> right) {
+        if (left.isEmpty()) {
+            return right;
+        }
+        left.addAll(right);
+        return left;
+    }
+
+    /** Tries a range of keys, splitting it in halves among subtasks while
+     *  it is larger than a grain, and merging their results. */
+    abstract static class Task<T> extends RecursiveTask<T> {
+
+        /** Try the keys in [LO, HI), at most GRAIN of them per task. */
+        Task(long lo, long hi, int grain) {
+            _lo = lo;
+            _hi = hi;
+            _grain = grain;
+        }
+
+        @Override
+        protected T compute() {
+            if (_hi - _lo > _grain) {
+                long mid = _lo + (_hi - _lo) / 2;
+                Task<T> right = part(mid, _hi);
+                right.fork();
+                T result = part(_lo, mid).compute();
+                return merge(result, right.join());
+            }
+            return tryKeys(_lo, _hi);
+        }
+
+        /** Return a task like me for the keys in [LO, HI). */
+        abstract Task<T> part(long lo, long hi);
+
+        /** Return the result for the keys of two adjacent ranges, given
+         *  the result LEFT for the first and RIGHT for the second. */
+        abstract T merge(T left, T right);
+
+        /** Try the keys in [LO, HI) in turn, and return the result. */
+        abstract T tryKeys(long lo, long hi);
+
+        /** First key to try. */
+        private final long _lo;
+        /** Just past the last key to try. */
+        private final long _hi;
+        /** Largest number of keys tried without splitting. */
+        private final int _grain;
+    }
+
+    /** Alphabet of the machine. */
+    private final Alphabet _alphabet;
+
+    /** Rotor orders. */
+    private final List<String[]> _orders;
+
+    /** Number of settings of the rotors for each order. */
+    private final long _settings;
+
+    /** Number of keys. */
+    private final long _size;
+}
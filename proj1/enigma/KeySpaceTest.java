@@ -0,0 +1,106 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySpace class.
+ *  @author Bryan Lim
+ */
+public class KeySpaceTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return a three-slot, two-pawl machine with the naval rotors I-III
+     *  and reflectors B and C. */
+    private Machine smallMachine() {
+        Collection<Rotor> rotors = new ArrayList<Rotor>();
+        String[] notches = {"Q", "E", "V"};
+        String[] names = {"I", "II", "III"};
+        for (int i = 0; i < names.length; i++) {
+            rotors.add(new MovingRotor(names[i],
+                new Permutation(NAVALA.get(names[i]), UPPER), notches[i]));
+        }
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"), UPPER)));
+        rotors.add(new Reflector("C", new Permutation(NAVALA.get("C"), UPPER)));
+        return new Machine(UPPER, 3, 2, rotors);
+    }
+
+    @Test
+    public void setsEveryKeyOnce() {
+        Machine machine = smallMachine();
+        KeySpace keys = new KeySpace(machine);
+        assertEquals(2 * 3 * 2, keys.orders().size());
+        assertEquals(2 * 3 * 2 * 26 * 26, keys.size());
+        Set<String> seen = new HashSet<String>();
+        int[] setting = new int[2];
+        int order = -1;
+        for (long key = 0; key < keys.size(); key += 1) {
+            order = keys.set(machine, key, order, setting);
+            String line = keys.describe(order, setting).toString();
+            assertTrue(seen.add(line));
+            if (key % 97 == 0) {
+                Machine expected = smallMachine();
+                String[] fields = line.split(" ");
+                expected.insertRotors(new String[] {
+                    fields[0], fields[1], fields[2]});
+                expected.setRotors(fields[3]);
+                assertEquals(expected.convert("HELLOWORLD"),
+                             machine.copy().convert("HELLOWORLD"));
+            }
+        }
+        assertEquals("C III II ZY",
+                     keys.describe(keys.orders().size() - 1,
+                                   new int[] {25, 24}).toString());
+    }
+
+    @Test
+    public void splitsRanges() {
+        final int grain = 7;
+        final int count = 1000;
+        class Count extends KeySpace.Task<List<Long>> {
+            Count(long lo, long hi) {
+                super(lo, hi, grain);
+            }
+
+            @Override
+            Count part(long lo, long hi) {
+                return new Count(lo, hi);
+            }
+
+            @Override
+            List<Long> merge(List<Long> left, List<Long> right) {
+                return KeySpace.concat(left, right);
+            }
+
+            @Override
+            List<Long> tryKeys(long lo, long hi) {
+                assertTrue(hi - lo <= grain);
+                List<Long> result = new ArrayList<Long>();
+                for (long key = lo; key < hi; key += 1) {
+                    result.add(key);
+                }
+                return result;
+            }
+        }
+        List<Long> keys =
+            ForkJoinPool.commonPool().invoke(new Count(0, count));
+        assertEquals(count, keys.size());
+        for (int k = 0; k < count; k += 1) {
+            assertEquals(k, (long) keys.get(k));
+        }
+    }
+
+}
@@ -0,0 +1,308 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static enigma.EnigmaException.*;
+
+/** The keystreams of machines whose rotor settings repeat after a short
+ *  period, kept within a memory budget.  A keystream holds, for each
+ *  position in a cycle of rotor settings, the complete substitution the
+ *  machine performs there (plugboard included), so that a machine with
+ *  a keystream converts a character with one array lookup and steps
+ *  only an index (see Machine.setKeystreamCache).  Keystreams are
+ *  immutable, and are filed under the configuration (rotors, ring
+ *  settings and plugboard) of the machines that use them; any setting in
+ *  a cycle finds its keystream and its position there.  A configuration
+ *  may also be marked as having too long a period to cache, so that
+ *  machines need not search for its period again.  When the budget is
+ *  exceeded, the configurations least recently used are evicted with
+ *  all their keystreams.  Any number of machines may share a cache,
+ *  from any number of threads.
+ *  @author Bryan Lim
+ */
+final class KeystreamCache {
+
+    /** A cache holding keystreams of at most BUDGET bytes in all. */
+    KeystreamCache(long budget) {
+        if (budget < 0) {
+            throw error("negative keystream cache budget");
+        }
+        _budget = budget;
+    }
+
+    /** Return the number of bytes my entries may occupy. */
+    long budget() {
+        return _budget;
+    }
+
+    /** Return the number of bytes my entries occupy. */
+    synchronized long size() {
+        return _size;
+    }
+
+    /** Return the number of keystreams I hold. */
+    synchronized int count() {
+        int result = 0;
+        for (Entry entry : _entries.values()) {
+            result += entry.keystreams.size();
+        }
+        return result;
+    }
+
+    /** Return the longest period of a keystream for an alphabet of
+     *  WIDTH characters that fits in my budget and whose tables fit in
+     *  an array. */
+    int maxPeriod(int width) {
+        return (int) Math.min((Integer.MAX_VALUE - 1) / width,
+                              _budget / Keystream.bytesPerPosition(width));
+    }
+
+    /** Return the keystream under KEY through the setting encoded as
+     *  STATE, or null if I have none. */
+    synchronized Keystream find(Key key, long state) {
+        Entry entry = _entries.get(key);
+        if (entry != null) {
+            for (Keystream keystream : entry.keystreams) {
+                if (keystream.position(state) >= 0) {
+                    return keystream;
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Return true iff the configuration KEY has been marked as having
+     *  too long a period. */
+    synchronized boolean tooLong(Key key) {
+        Entry entry = _entries.get(key);
+        return entry != null && entry.tooLong;
+    }
+
+    /** Add KEYSTREAM to those for KEY, evicting others as needed to stay
+     *  within my budget, and return it; or, if I already have a keystream
+     *  through the same cycle under KEY (added by another machine in the
+     *  meantime), return that one instead.  A keystream larger than the
+     *  whole budget is not kept. */
+    synchronized Keystream put(Key key, Keystream keystream) {
+        Keystream existing = find(key, keystream.states[0]);
+        if (existing != null) {
+            return existing;
+        }
+        if (keystream.bytes() + ENTRY_BYTES > _budget) {
+            return keystream;
+        }
+        entry(key).keystreams.add(keystream);
+        _size += keystream.bytes();
+        evict();
+        return keystream;
+    }
+
+    /** Mark the configuration KEY as having too long a period. */
+    synchronized void putTooLong(Key key) {
+        if (ENTRY_BYTES <= _budget) {
+            entry(key).tooLong = true;
+            evict();
+        }
+    }
+
+    /** Return the entry for KEY, adding an empty one if there is
+     *  none. */
+    private Entry entry(Key key) {
+        Entry result = _entries.get(key);
+        if (result == null) {
+            result = new Entry();
+            _entries.put(key, result);
+            _size += ENTRY_BYTES;
+        }
+        return result;
+    }
+
+    /** Evict the least recently used entries until I am within my
+     *  budget. */
+    private void evict() {
+        Iterator<Entry> oldest = _entries.values().iterator();
+        while (_size > _budget) {
+            Entry entry = oldest.next();
+            _size -= ENTRY_BYTES;
+            for (Keystream keystream : entry.keystreams) {
+                _size -= keystream.bytes();
+            }
+            oldest.remove();
+        }
+    }
+
+    /** Identifies the configuration of a machine. */
+    static final class Key {
+
+        /** The key for a machine with rotors ROTORS, ring settings RINGS,
+         *  and plugboard mapping PLUGBOARD, none of which may be modified
+         *  afterwards. */
+        Key(Rotor[] rotors, int[] rings, int[] plugboard) {
+            _rotors = rotors;
+            _rings = rings;
+            _plugboard = plugboard;
+            _hash = Arrays.hashCode(rotors) ^ Arrays.hashCode(rings)
+                ^ Arrays.hashCode(plugboard);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return _hash == other._hash
+                && Arrays.equals(_rotors, other._rotors)
+                && Arrays.equals(_rings, other._rings)
+                && Arrays.equals(_plugboard, other._plugboard);
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+
+        /** The rotor in each slot. */
+        private final Rotor[] _rotors;
+        /** The ring setting of each slot. */
+        private final int[] _rings;
+        /** The plugboard's mapping of each index. */
+        private final int[] _plugboard;
+        /** My hash code. */
+        private final int _hash;
+    }
+
+    /** The substitutions made by a machine at each position in a cycle of
+     *  its rotor settings, with the rotor steps and carries made on the
+     *  way from one to the next. */
+    static final class Keystream {
+
+        /** A keystream with PERIOD positions for an alphabet of WIDTH
+         *  characters, to be filled in by the machine and then indexed
+         *  with index(). */
+        Keystream(int period, int width) {
+            _period = period;
+            _width = width;
+            tables = new char[Math.multiplyExact(period, width)];
+            states = new long[period];
+            stepTotals = new int[period + 1];
+            carryTotals = new int[period + 1];
+            _sortedStates = new long[period];
+            _sortedPositions = new int[period];
+        }
+
+        /** Return the number of bytes a keystream occupies for each
+         *  position in its cycle, for an alphabet of WIDTH characters. */
+        static long bytesPerPosition(int width) {
+            return (long) Character.BYTES * width + 2 * Long.BYTES
+                + 3 * Integer.BYTES;
+        }
+
+        /** Return the number of bytes I occupy. */
+        long bytes() {
+            return _period * bytesPerPosition(_width);
+        }
+
+        /** Return the number of positions in my cycle. */
+        int period() {
+            return _period;
+        }
+
+        /** Prepare to look up positions by state, once states is
+         *  filled in. */
+        void index() {
+            Integer[] order = new Integer[_period];
+            for (int p = 0; p < _period; p += 1) {
+                order[p] = p;
+            }
+            Arrays.sort(order, (p, q) -> Long.compare(states[p], states[q]));
+            for (int k = 0; k < _period; k += 1) {
+                _sortedStates[k] = states[order[k]];
+                _sortedPositions[k] = order[k];
+            }
+        }
+
+        /** Return the position of the setting encoded as STATE in my
+         *  cycle, or -1 if it is not there. */
+        int position(long state) {
+            int k = Arrays.binarySearch(_sortedStates, state);
+            return k < 0 ? -1 : _sortedPositions[k];
+        }
+
+        /** Return the number of rotor steps made by PRESSES presses
+         *  starting at position FROM. */
+        long steps(int from, long presses) {
+            return count(stepTotals, from, presses);
+        }
+
+        /** Return the number of carries made by PRESSES presses starting
+         *  at position FROM. */
+        long carries(int from, long presses) {
+            return count(carryTotals, from, presses);
+        }
+
+        /** Return the total of the counts whose running totals are
+         *  TOTALS over PRESSES presses starting at position FROM. */
+        private long count(int[] totals, int from, long presses) {
+            long result = presses / _period * totals[_period];
+            int to = from + (int) (presses % _period);
+            if (to <= _period) {
+                return result + totals[to] - totals[from];
+            }
+            return result + totals[_period] - totals[from]
+                + totals[to - _period];
+        }
+
+        /** Number of positions in the cycle. */
+        private final int _period;
+        /** Number of characters in the alphabet. */
+        private final int _width;
+        /** The substitution at position P maps index C to
+         *  tables[P * _width + C]. */
+        final char[] tables;
+        /** The encoded rotor settings at each position. */
+        final long[] states;
+        /** Element P is the number of rotor steps made by the presses
+         *  from position 0 to position P. */
+        final int[] stepTotals;
+        /** Element P is the number of carries made by the presses from
+         *  position 0 to position P. */
+        final int[] carryTotals;
+        /** The elements of states in increasing order. */
+        private final long[] _sortedStates;
+        /** The position of each element of _sortedStates. */
+        private final int[] _sortedPositions;
+    }
+
+    /** The keystreams filed under one configuration. */
+    private static final class Entry {
+        /** The keystreams, each through a different cycle. */
+        final List<Keystream> keystreams = new ArrayList<Keystream>();
+        /** True iff the configuration has too long a period to cache. */
+        boolean tooLong;
+    }
+
+    /** Bytes charged for each entry, apart from its keystreams. */
+    private static final long ENTRY_BYTES = 256;
+
+    /** Initial capacity of _entries. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Load factor of _entries. */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /** Maximum total size of my entries, in bytes. */
+    private final long _budget;
+
+    /** Total size of my entries, in bytes. */
+    private long _size;
+
+    /** My entries, least recently used first. */
+    private final Map<Key, Entry> _entries =
+        new LinkedHashMap<Key, Entry>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+}
@@ -0,0 +1,139 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeystreamCache class.
+ *  @author Bryan Lim
+ */
+public class KeystreamCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return a key for a machine whose plugboard swaps 0 and 1 iff
+     *  SWAP, and that has no rotors to speak of. */
+    private KeystreamCache.Key key(boolean swap) {
+        return new KeystreamCache.Key(new Rotor[0], new int[0],
+                                      swap ? new int[] {1, 0}
+                                      : new int[] {0, 1});
+    }
+
+    /** Return an indexed keystream over UPPER through the PERIOD states
+     *  FIRST, FIRST + 1, ..., in reverse order. */
+    private KeystreamCache.Keystream keystream(long first, int period) {
+        KeystreamCache.Keystream result =
+            new KeystreamCache.Keystream(period, 26);
+        for (int p = 0; p < period; p += 1) {
+            result.states[p] = first + period - 1 - p;
+        }
+        result.index();
+        return result;
+    }
+
+    @Test
+    public void keysCompareContents() {
+        Rotor rotor = new FixedRotor("F", new Permutation("", UPPER));
+        KeystreamCache.Key a =
+            new KeystreamCache.Key(new Rotor[] {rotor}, new int[] {3},
+                                   new int[] {1, 0});
+        KeystreamCache.Key b =
+            new KeystreamCache.Key(new Rotor[] {rotor}, new int[] {3},
+                                   new int[] {1, 0});
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertNotEquals(a, new KeystreamCache.Key(new Rotor[] {rotor},
+                                                  new int[] {3},
+                                                  new int[] {0, 1}));
+        assertNotEquals(a, new KeystreamCache.Key(new Rotor[] {rotor},
+                                                  new int[] {4},
+                                                  new int[] {1, 0}));
+    }
+
+    @Test
+    public void findsPositions() {
+        KeystreamCache cache = new KeystreamCache(1 << 20);
+        KeystreamCache.Keystream low = keystream(10, 5);
+        KeystreamCache.Keystream high = keystream(20, 5);
+        cache.put(key(true), low);
+        cache.put(key(true), high);
+        assertSame(low, cache.find(key(true), 12));
+        assertEquals(2, low.position(12));
+        assertSame(high, cache.find(key(true), 20));
+        assertEquals(4, high.position(20));
+        assertNull(cache.find(key(true), 15));
+        assertNull(cache.find(key(false), 12));
+        assertEquals(2, cache.count());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        long perKeystream = keystream(0, 100).bytes();
+        KeystreamCache cache = new KeystreamCache(3 * perKeystream);
+        cache.put(key(false), keystream(0, 100));
+        cache.put(key(true), keystream(0, 100));
+        cache.find(key(false), 0);
+        cache.put(key(false), keystream(100, 100));
+        assertNull(cache.find(key(true), 0));
+        assertNotNull(cache.find(key(false), 0));
+        assertNotNull(cache.find(key(false), 100));
+        assertEquals(2, cache.count());
+
+        cache.put(key(true), keystream(0, 1000));
+        assertNull(cache.find(key(true), 0));
+        assertEquals(2, cache.count());
+        assertTrue(cache.size() <= cache.budget());
+    }
+
+    @Test
+    public void keepsOneKeystreamPerCycle() {
+        KeystreamCache cache = new KeystreamCache(1 << 20);
+        KeystreamCache.Keystream first = keystream(10, 5);
+        assertSame(first, cache.put(key(true), first));
+        long size = cache.size();
+        assertSame(first, cache.put(key(true), keystream(10, 5)));
+        assertEquals(size, cache.size());
+        assertEquals(1, cache.count());
+        KeystreamCache.Keystream other = keystream(10, 5);
+        assertSame(other, cache.put(key(false), other));
+        assertEquals(2, cache.count());
+    }
+
+    @Test
+    public void limitsPeriodsToArrays() {
+        KeystreamCache cache = new KeystreamCache(Long.MAX_VALUE);
+        for (int width : new int[] {1, 26, 3000, 1 << 16}) {
+            long period = cache.maxPeriod(width);
+            assertTrue(period > 0);
+            assertTrue(period * width < Integer.MAX_VALUE);
+        }
+    }
+
+    @Test
+    public void marksLongPeriods() {
+        KeystreamCache cache = new KeystreamCache(1 << 20);
+        assertFalse(cache.tooLong(key(true)));
+        cache.putTooLong(key(true));
+        assertTrue(cache.tooLong(key(true)));
+        assertFalse(cache.tooLong(key(false)));
+    }
+
+    @Test
+    public void countsWrapAroundCycle() {
+        KeystreamCache.Keystream keystream =
+            new KeystreamCache.Keystream(4, 26);
+        int[] steps = {0, 1, 3, 4, 7};
+        System.arraycopy(steps, 0, keystream.stepTotals, 0, steps.length);
+        assertEquals(0, keystream.steps(2, 0));
+        assertEquals(1, keystream.steps(2, 1));
+        assertEquals(4, keystream.steps(2, 2));
+        assertEquals(7 + 4, keystream.steps(2, 6));
+        assertEquals(3 * 7, keystream.steps(0, 12));
+    }
+
+}
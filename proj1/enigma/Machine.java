@@ -1,10 +1,24 @@
 package enigma;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 
 import static enigma.EnigmaException.*;
 
-/** Class that represents a complete enigma machine.
+/** Class that represents a complete enigma machine.  The rotors are
+ *  treated as immutable definitions: the setting and ring setting of
+ *  each slot are part of the machine's own state, so any number of
+ *  machines may share one collection of rotors, and copying or saving
+ *  the state of a machine costs time proportional to its number of
+ *  slots.  Each slot converts through its rotor's tables as reindexed
+ *  for the slot's ring setting (see Rotor), which are looked up by the
+ *  slot's setting alone, or through the rotor itself when its alphabet
+ *  is too large for tables.  A machine given a KeystreamCache converts
+ *  batches through a cached keystream instead whenever its settings
+ *  cycle with a short enough period.
  *  @author Bryan Lim
  */
 class Machine {
@@ -18,9 +32,107 @@ class Machine {
         _numRotors = numRotors;
         _pawls = pawls;
         _allRotorsTemp = allRotors;
-        _allRotors = new Rotor[_allRotorsTemp.size()];
-        _allRotors = _allRotorsTemp.toArray(_allRotors);
+        _allRotors = _allRotorsTemp.toArray(new Rotor[0]);
+        _rotorIndex = new HashMap<String, Integer>();
+        for (int i = 0; i < _allRotors.length; i++) {
+            _rotorIndex.put(_allRotors[i].name(), i);
+        }
         _myRotors = new Rotor[_numRotors];
+        _settings = new int[_numRotors];
+        _rings = new int[_numRotors];
+        Arrays.fill(_rings, -1);
+        _forward = new int[_numRotors][][];
+        _backward = new int[_numRotors][][];
+        _plugboard = new Permutation("", _alphabet);
+        _core = new int[_alphabet.size()];
+        _coreStale = true;
+        _quiet = UNKNOWN;
+    }
+
+    /** A new machine in the same state as ORIGINAL, sharing its rotors. */
+    private Machine(Machine original) {
+        _alphabet = original._alphabet;
+        _numRotors = original._numRotors;
+        _pawls = original._pawls;
+        _allRotors = original._allRotors;
+        _rotorIndex = original._rotorIndex;
+        _myRotors = original._myRotors.clone();
+        _settings = original._settings.clone();
+        _rings = original._rings.clone();
+        _forward = original._forward.clone();
+        _backward = original._backward.clone();
+        _plugboard = original._plugboard;
+        _core = new int[original._core.length];
+        _coreStale = true;
+        _quiet = original._quiet;
+        _keystreamCache = original._keystreamCache;
+        _keystream = original._keystream;
+        _keystreamPos = original._keystreamPos;
+        _tail = original._tail;
+        _noKeystream = original._noKeystream;
+    }
+
+    /** Return a new machine with my alphabet, rotors, plugboard and
+     *  settings, which may be used independently of (and concurrently
+     *  with) me.  Its counts of rotor steps and carries start at 0. */
+    Machine copy() {
+        return new Machine(this);
+    }
+
+    /** The saved state of a machine: its rotors, their settings and ring
+     *  settings, and its plugboard. */
+    static final class State {
+
+        /** A state with rotors ROTORS at SETTINGS with ring settings
+         *  RINGS and plugboard PLUGBOARD, none of which may be modified
+         *  afterwards. */
+        private State(Rotor[] rotors, int[] settings, int[] rings,
+                      Permutation plugboard) {
+            _rotors = rotors;
+            _settings = settings;
+            _rings = rings;
+            _plugboard = plugboard;
+        }
+
+        /** The rotor in each slot. */
+        private final Rotor[] _rotors;
+        /** The setting of each slot. */
+        private final int[] _settings;
+        /** The ring setting of each slot. */
+        private final int[] _rings;
+        /** The plugboard. */
+        private final Permutation _plugboard;
+    }
+
+    /** Return my current state, to be restored later (by me or by any
+     *  machine with my configuration) with restore. */
+    State snapshot() {
+        return new State(_myRotors.clone(), _settings.clone(),
+                         _rings.clone(), _plugboard);
+    }
+
+    /** Return to STATE, as returned by snapshot on a machine with my
+     *  configuration. */
+    void restore(State state) {
+        if (state._rotors.length != _numRotors) {
+            throw error("state is for a machine with %d rotors",
+                        state._rotors.length);
+        }
+        System.arraycopy(state._rotors, 0, _myRotors, 0, _numRotors);
+        System.arraycopy(state._settings, 0, _settings, 0, _numRotors);
+        for (int i = 0; i < _numRotors; i += 1) {
+            _rings[i] = -1;
+            setRing(i, state._rings[i]);
+        }
+        _plugboard = state._plugboard;
+        _coreStale = true;
+        _quiet = UNKNOWN;
+        dropKeystream();
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
     }
 
     /** Return the number of rotor slots I have. */
@@ -33,49 +145,41 @@ class Machine {
         return _pawls;
     }
 
+    /** Return all the rotors available to me, in no particular order.
+     *  The list may not be modified. */
+    List<Rotor> availableRotors() {
+        return Collections.unmodifiableList(Arrays.asList(_allRotors));
+    }
+
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
-     *  Initially, all rotors are set at their 0 setting. */
+     *  Initially, all rotors are set at their 0 setting, with ring
+     *  setting 0. */
     void insertRotors(String[] rotors) {
-        for (int i = 0; i < rotors.length - 1; i++) {
-            for (int j = i + 1; j < rotors.length; j++) {
-                if (rotors[i].equals(rotors[j])) {
-                    throw new EnigmaException("Duplicate rotors");
-                }
-            }
-        }
         if (rotors.length != _numRotors) {
             throw new EnigmaException("Wrong number of arguments");
         }
-        int count1 = 0;
-        int count2 = 0;
-        int count3 = 0;
-        for (int i = 0; i < _allRotors.length; i++) {
-            if (rotors[0].equals(_allRotors[i].name())) {
-                _myRotors[0] = _allRotors[i];
-                count1++;
-            }
+        if (_insertedAt == null) {
+            _insertedAt = new int[_allRotors.length];
         }
-        for (int i = 1; i <= _numRotors - _pawls; i++) {
-            for (int j = 0; j < _allRotors.length; j++) {
-                if (rotors[i].equals(_allRotors[j].name())) {
-                    _myRotors[i] = _allRotors[j];
-                    count2++;
-                }
+        _insertion += 1;
+        for (int i = 0; i < rotors.length; i++) {
+            Integer k = _rotorIndex.get(rotors[i]);
+            if (k == null) {
+                throw new EnigmaException("Bad rotor name");
             }
-        }
-
-        for (int i = 2; i < rotors.length; i++) {
-            for (int j = 0; j < _allRotors.length; j++) {
-                if (rotors[i].equals(_allRotors[j].name())) {
-                    _myRotors[i] = _allRotors[j];
-                    count3++;
-                }
+            if (_insertedAt[k] == _insertion) {
+                throw new EnigmaException("Duplicate rotors");
             }
+            _insertedAt[k] = _insertion;
+            _myRotors[i] = _allRotors[k];
+            _settings[i] = 0;
+            _rings[i] = -1;
+            setRing(i, 0);
         }
-        if (count1 == 0 || count2 == 0 || count3 == 0) {
-            throw new EnigmaException("Bad rotor name");
-        }
+        _coreStale = true;
+        _quiet = UNKNOWN;
+        dropKeystream();
     }
 
     /** Set my rotors according to SETTING, which must be a string of four
@@ -89,50 +193,627 @@ class Machine {
             throw new EnigmaException("Setting too long");
         }
         for (int i = 1; i < _numRotors; i++) {
-            _myRotors[i].set(setting.charAt(i - 1));
+            setSlot(i, _alphabet.toInt(setting.charAt(i - 1)));
+        }
+        _coreStale = true;
+        _quiet = UNKNOWN;
+        dropKeystream();
+    }
+
+    /** Set my rotors to the settings SETTING[0 .. numRotors()-2], given
+     *  as indices.  SETTING[0] is the setting of the leftmost rotor (not
+     *  counting the reflector). */
+    void setRotors(int[] setting) {
+        if (setting.length != _numRotors - 1) {
+            throw new EnigmaException("Wrong number of settings");
+        }
+        for (int i = 1; i < _numRotors; i++) {
+            setSlot(i, setting[i - 1]);
+        }
+        _coreStale = true;
+        _quiet = UNKNOWN;
+        dropKeystream();
+    }
+
+    /** Set the rotor in slot I to POSN. */
+    private void setSlot(int i, int posn) {
+        if (posn != 0 && _myRotors[i].reflecting()) {
+            throw error("reflector has only one position");
         }
+        _settings[i] = posn;
+    }
+
+    /** Return the setting of the rotor in slot I, where slot 0 holds the
+     *  reflector. */
+    int setting(int i) {
+        return _settings[i];
+    }
+
+    /** Set the ring settings of my rotors according to RINGS, a string
+     *  with a character for each slot but the reflector's, as for
+     *  setRotors. */
+    void setRings(String rings) {
+        if (rings.length() < _numRotors - 1) {
+            throw new EnigmaException("Ring setting too short");
+        }
+        if (rings.length() > _numRotors - 1) {
+            throw new EnigmaException("Ring setting too long");
+        }
+        for (int i = 1; i < _numRotors; i++) {
+            setRing(i, _alphabet.toInt(rings.charAt(i - 1)));
+        }
+        _coreStale = true;
+        dropKeystream();
+    }
+
+    /** Set the ring settings of my rotors to RINGS[0 .. numRotors()-2],
+     *  given as indices, as for setRotors. */
+    void setRings(int[] rings) {
+        if (rings.length != _numRotors - 1) {
+            throw new EnigmaException("Wrong number of ring settings");
+        }
+        for (int i = 1; i < _numRotors; i++) {
+            setRing(i, rings[i - 1]);
+        }
+        _coreStale = true;
+        dropKeystream();
+    }
+
+    /** Set the ring settings of all my rotors to 0. */
+    void clearRings() {
+        for (int i = 1; i < _numRotors; i++) {
+            setRing(i, 0);
+        }
+        _coreStale = true;
+        dropKeystream();
+    }
+
+    /** Set the ring setting of the rotor in slot I to RING, fetching
+     *  the slot's tables if it has changed. */
+    private void setRing(int i, int ring) {
+        if (ring == _rings[i]) {
+            return;
+        }
+        if (ring != 0 && _myRotors[i].reflecting()) {
+            throw error("reflector has no ring setting");
+        }
+        _rings[i] = ring;
+        _forward[i] = _myRotors[i].forwardTables(ring);
+        _backward[i] = _myRotors[i].backwardTables(ring);
+    }
+
+    /** Return the ring setting of the rotor in slot I. */
+    int ring(int i) {
+        return _rings[i];
     }
 
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
         _plugboard = plugboard;
+        dropKeystream();
+    }
+
+    /** Use keystreams from CACHE from now on, or none if CACHE is null.
+     *  Thereafter, the first batch conversion after the rotors, settings,
+     *  ring settings or plugboard change (or after a conversion of a
+     *  single character) looks in CACHE for the cycle my settings are
+     *  about to enter.  If it is not there, it finds the period of my
+     *  settings by stepping through them, and if the period is short
+     *  enough for CACHE to hold, computes the keystream (for about the
+     *  cost of converting period x alphabet size characters) and adds it
+     *  to CACHE.  Batches are then converted through the keystream until
+     *  the next such change.  Computing a keystream pays when its
+     *  configuration converts many more characters than that in all, as
+     *  when generating test vectors; copies of me share CACHE. */
+    void setKeystreamCache(KeystreamCache cache) {
+        _keystreamCache = cache;
+        dropKeystream();
+    }
+
+    /** Forget my keystream, if any, after a change to my configuration
+     *  or settings. */
+    private void dropKeystream() {
+        _keystream = null;
+        _noKeystream = false;
     }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
+        _keystream = null;
+        return convertOne(c);
+    }
+
+    /** Return the conversion of C as for convert(int), without regard
+     *  to my keystream. */
+    private int convertOne(int c) {
+        step();
+        int last = _numRotors - 1, posn = _settings[last];
+        if (_coreStale) {
+            compileCore();
+        }
+        c = _plugboard.permute(c);
+        c = forward(last, posn, c);
+        c = _core[c];
+        c = backward(last, posn, c);
+        c = _plugboard.permute(c);
+        return c;
+    }
+
+    /** Return the conversion of C by the rotor in slot I at setting
+     *  POSN. */
+    private int forward(int i, int posn, int c) {
+        int[][] tables = _forward[i];
+        if (tables == null) {
+            return _myRotors[i].convertForward(c, offset(i, posn));
+        }
+        return tables[posn][c];
+    }
+
+    /** Return the conversion of C by the inverse of the rotor in slot I
+     *  at setting POSN. */
+    private int backward(int i, int posn, int c) {
+        int[][] tables = _backward[i];
+        if (tables == null) {
+            return _myRotors[i].convertBackward(c, offset(i, posn));
+        }
+        return tables[posn][c];
+    }
+
+    /** Return the offset of the wiring of the rotor in slot I at setting
+     *  POSN, given the slot's ring setting. */
+    private int offset(int i, int posn) {
+        return _myRotors[i].permutation().wrap(posn - _rings[i]);
+    }
+
+    /** Advance the machine as for a key press, and then store in
+     *  TABLE[C] the conversion of each index C by my rotors alone,
+     *  leaving out the plugboard. */
+    void press(int[] table) {
+        _keystream = null;
+        step();
+        if (_coreStale) {
+            compileCore();
+        }
+        int last = _numRotors - 1, posn = _settings[last];
+        for (int c = 0; c < table.length; c += 1) {
+            table[c] = backward(last, posn, _core[forward(last, posn, c)]);
+        }
+    }
+
+    /** Advance my rotors as for one key press.  During a run of presses
+     *  known to move only the rightmost rotor, that is all a press does;
+     *  the notches are consulted only when such a run ends. */
+    private void step() {
+        if (_quiet == UNKNOWN) {
+            _quiet = quietPresses();
+        }
+        if (_quiet > 0) {
+            _quiet -= 1;
+            advance(_numRotors - 1);
+        } else {
+            carry();
+            _quiet = UNKNOWN;
+        }
+    }
+
+    /** Advance my rotors as for one key press, checking every notch. */
+    private void carry() {
         for (int i = _numRotors - 1; i > 0; i--) {
-            if (_myRotors[i].atNotch()) {
-                _myRotors[i - 1].advance();
+            if (_myRotors[i].atNotch(_settings[i])) {
+                _carries += 1;
+                advance(i - 1);
                 if (i != _numRotors - 1) {
-                    _myRotors[i].advance();
+                    advance(i);
                 }
+                _coreStale = true;
             }
         }
-        _myRotors[_numRotors - 1].advance();
-        c = _plugboard.permute(c);
-        for (int i = _numRotors - 1; i > 0; i--) {
-            c = _myRotors[i].convertForward(c);
+        advance(_numRotors - 1);
+    }
+
+    /** Advance the rotor in slot I one position, if it rotates. */
+    private void advance(int i) {
+        if (_myRotors[i].rotates()) {
+            _settings[i] = _myRotors[i].permutation().wrap(_settings[i] + 1);
+            _steps += 1;
+        }
+    }
+
+    /** Return the number of times any of my rotors has advanced one
+     *  position on a key press (skip does not count). */
+    long rotorSteps() {
+        return _steps;
+    }
+
+    /** Return the number of times one of my rotors, being at a notch on
+     *  a key press, has carried into its left neighbor. */
+    long carries() {
+        return _carries;
+    }
+
+    /** Convert the LEN indices BUF[OFF .. OFF+LEN-1] in place, as if by
+     *  calling convert(int) on each in turn.  The presses on which only
+     *  my rightmost rotor moves are handled in runs that need no notch
+     *  checks and reuse the same inner signal path table. */
+    void convert(int[] buf, int off, int len) {
+        if (_keystreamCache != null && !_noKeystream) {
+            if (_keystream == null) {
+                findKeystream();
+            }
+            if (_keystream != null) {
+                convertKeystream(buf, off, len);
+                return;
+            }
         }
-        c = _myRotors[0].convertForward(c);
-        for (int j = 1; j < _numRotors; j++) {
-            c = _myRotors[j].convertBackward(c);
+        int end = off + len;
+        int i = off;
+        int last = _numRotors - 1;
+        int[][] forward = _forward[last], backward = _backward[last];
+        if (forward == null) {
+            for (; i < end; i += 1) {
+                buf[i] = convertOne(buf[i]);
+            }
+            return;
+        }
+        while (i < end) {
+            if (_quiet == UNKNOWN) {
+                _quiet = quietPresses();
+            }
+            if (_quiet == 0) {
+                buf[i] = convertOne(buf[i]);
+                i += 1;
+                continue;
+            }
+            int stop = (int) Math.min(end, (long) i + _quiet);
+            _quiet -= stop - i;
+            if (_coreStale) {
+                compileCore();
+            }
+            for (; i < stop; i += 1) {
+                advance(last);
+                int posn = _settings[last];
+                int c = _plugboard.permute(buf[i]);
+                c = forward[posn][c];
+                c = _core[c];
+                c = backward[posn][c];
+                buf[i] = _plugboard.permute(c);
+            }
+        }
+    }
+
+    /** Store the conversion of the LEN characters IN[OFF .. OFF+LEN-1]
+     *  in OUT[OFF .. OFF+LEN-1], as if by converting each character in
+     *  turn.  IN and OUT may be the same array. */
+    void convert(char[] in, int off, int len, char[] out) {
+        int[] buf = batchBuffer();
+        for (int done = 0; done < len; done += buf.length) {
+            int n = Math.min(buf.length, len - done);
+            for (int i = 0; i < n; i += 1) {
+                buf[i] = _alphabet.toInt(in[off + done + i]);
+            }
+            convert(buf, 0, n);
+            for (int i = 0; i < n; i += 1) {
+                out[off + done + i] = _alphabet.toChar(buf[i]);
+            }
         }
-        c = _plugboard.permute(c);
-        return c;
+    }
+
+    /** Store the conversion of the LEN characters IN[OFF .. OFF+LEN-1]
+     *  in OUT[OFF .. OFF+LEN-1], as if by converting each character in
+     *  turn.  Each byte is the character with that (unsigned) code, and
+     *  so all the characters of my alphabet must be in the range
+     *  0 .. 255.  IN and OUT may be the same array. */
+    void convert(byte[] in, int off, int len, byte[] out) {
+        int[] buf = batchBuffer();
+        for (int done = 0; done < len; done += buf.length) {
+            int n = Math.min(buf.length, len - done);
+            for (int i = 0; i < n; i += 1) {
+                char c = (char) (in[off + done + i] & MAX_BYTE);
+                buf[i] = _alphabet.toInt(c);
+            }
+            convert(buf, 0, n);
+            for (int i = 0; i < n; i += 1) {
+                char c = _alphabet.toChar(buf[i]);
+                if (c > MAX_BYTE) {
+                    throw error("character %c does not fit in a byte", c);
+                }
+                out[off + done + i] = (byte) c;
+            }
+        }
+    }
+
+    /** Return the number of key presses, starting with the next, that
+     *  will move only my rightmost rotor: none if a carry is due on the
+     *  next press, and otherwise the presses until the rightmost rotor
+     *  reaches a notch (or Integer.MAX_VALUE if it never will). */
+    private int quietPresses() {
+        for (int i = 1; i < _numRotors - 1; i += 1) {
+            if (_myRotors[i].atNotch(_settings[i])) {
+                return 0;
+            }
+        }
+        Rotor fast = _myRotors[_numRotors - 1];
+        int size = fast.size(), setting = _settings[_numRotors - 1];
+        for (int k = 0; k < size; k += 1) {
+            if (fast.atNotch((setting + k) % size)) {
+                return k;
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    /** Return a scratch buffer for batch conversions. */
+    private int[] batchBuffer() {
+        if (_batch == null) {
+            _batch = new int[BATCH_SIZE];
+        }
+        return _batch;
+    }
+
+    /** Advance my rotors to the settings they would have after PRESSES
+     *  further key presses, as if that many characters had been
+     *  converted, in time independent of PRESSES.  Once my odometer's
+     *  scratch space has grown to fit my rotors, this allocates
+     *  nothing. */
+    void skip(long presses) {
+        if (_odometer == null) {
+            _odometer = new Odometer();
+        }
+        _odometer.advance(_myRotors, _settings, presses);
+        _coreStale = true;
+        _quiet = UNKNOWN;
+        dropKeystream();
+    }
+
+    /** Convert the LEN indices BUF[OFF .. OFF+LEN-1] in place through
+     *  _keystream, first converting the _tail characters that precede
+     *  the cycle of my settings as usual. */
+    private void convertKeystream(int[] buf, int off, int len) {
+        int end = off + len;
+        int i = off;
+        for (; _tail > 0 && i < end; _tail -= 1, i += 1) {
+            buf[i] = convertOne(buf[i]);
+        }
+        if (i == end) {
+            return;
+        }
+        KeystreamCache.Keystream keystream = _keystream;
+        _steps += keystream.steps(_keystreamPos, end - i);
+        _carries += keystream.carries(_keystreamPos, end - i);
+        char[] tables = keystream.tables;
+        int width = _core.length, limit = keystream.period() * width;
+        int row = _keystreamPos * width;
+        for (; i < end; i += 1) {
+            row += width;
+            if (row == limit) {
+                row = 0;
+            }
+            buf[i] = tables[row + buf[i]];
+        }
+        _keystreamPos = row / width;
+        decode(keystream.states[_keystreamPos]);
+    }
+
+    /** Set _keystream to the keystream of the cycle my settings enter,
+     *  from _keystreamCache or newly computed and added to it, with _tail
+     *  and _keystreamPos telling how many presses lead into the cycle and
+     *  where they lead; or, if the cycle is too long to cache, set
+     *  _noKeystream.  A cycle entered within MAX_LEAD_IN presses is found
+     *  in the cache without searching for its period.  My state is
+     *  unchanged. */
+    private void findKeystream() {
+        int width = _core.length;
+        int limit = _keystreamCache.maxPeriod(width);
+        if (limit == 0 || !encodable()) {
+            _noKeystream = true;
+            return;
+        }
+        int[] plugboard = new int[width];
+        for (int c = 0; c < width; c += 1) {
+            plugboard[c] = _plugboard.permute(c);
+        }
+        KeystreamCache.Key key =
+            new KeystreamCache.Key(_myRotors.clone(), _rings.clone(),
+                                   plugboard);
+        if (_keystreamCache.tooLong(key)) {
+            _noKeystream = true;
+            return;
+        }
+        int[] start = _settings.clone();
+        long steps = _steps, carries = _carries;
+        _keystream = null;
+        for (_tail = 0; _tail <= MAX_LEAD_IN; _tail += 1) {
+            long state = encode(_settings);
+            _keystream = _keystreamCache.find(key, state);
+            if (_keystream != null) {
+                _keystreamPos = _keystream.position(state);
+                break;
+            }
+            step();
+        }
+        if (_keystream == null) {
+            resetSettings(start);
+            newKeystream(key, limit);
+        }
+        resetSettings(start);
+        _steps = steps;
+        _carries = carries;
+    }
+
+    /** Find the cycle my settings enter, and set _keystream, _tail and
+     *  _keystreamPos as for findKeystream, adding a keystream for the
+     *  cycle to _keystreamCache under KEY unless it is already there.
+     *  If the period of the cycle is over LIMIT, instead mark KEY in
+     *  _keystreamCache as too long and set _noKeystream.  My settings
+     *  are left somewhere on their way. */
+    private void newKeystream(KeystreamCache.Key key, int limit) {
+        int[] start = _settings.clone();
+        int period = findPeriod(limit);
+        if (period == 0) {
+            _keystreamCache.putTooLong(key);
+            _noKeystream = true;
+            return;
+        }
+        resetSettings(start);
+        long[] cycle = new long[period];
+        long state = encode(_settings);
+        for (int k = 0;; k += 1) {
+            if (k >= period && state == cycle[k % period]) {
+                _tail = k - period;
+                break;
+            }
+            cycle[k % period] = state;
+            step();
+            state = encode(_settings);
+        }
+        _keystream = _keystreamCache.find(key, state);
+        if (_keystream != null) {
+            _keystreamPos = _keystream.position(state);
+            return;
+        }
+        KeystreamCache.Keystream keystream =
+            computeKeystream(cycle, _tail % period);
+        keystream.index();
+        _keystream = _keystreamCache.put(key, keystream);
+        _keystreamPos = _keystream.position(state);
+    }
+
+    /** Return the period of my settings if it is at most LIMIT, and
+     *  otherwise 0, leaving my settings somewhere on their way.  This
+     *  is Brent's cycle-finding algorithm, giving up once it has
+     *  stepped far enough to have found any period up to LIMIT after a
+     *  lead-in of up to LIMIT presses. */
+    private int findPeriod(int limit) {
+        long giveUp = 3L * limit + 1;
+        long power = 1, period = 1, stepped = 1;
+        long slow = encode(_settings);
+        step();
+        long fast = encode(_settings);
+        while (slow != fast) {
+            if (stepped == giveUp) {
+                return 0;
+            }
+            if (power == period) {
+                slow = fast;
+                power *= 2;
+                period = 0;
+            }
+            step();
+            fast = encode(_settings);
+            period += 1;
+            stepped += 1;
+        }
+        return period <= limit ? (int) period : 0;
+    }
+
+    /** Return a keystream through the PERIOD = CYCLE.length encoded
+     *  settings in CYCLE, starting with CYCLE[FIRST], leaving my
+     *  settings at CYCLE[FIRST]. */
+    private KeystreamCache.Keystream computeKeystream(long[] cycle,
+                                                      int first) {
+        int period = cycle.length, width = _core.length;
+        int last = _numRotors - 1;
+        KeystreamCache.Keystream result =
+            new KeystreamCache.Keystream(period, width);
+        decode(cycle[first]);
+        for (int j = 0; j < period; j += 1) {
+            result.states[j] = cycle[(first + j) % period];
+            compileCore();
+            int posn = _settings[last];
+            for (int c = 0; c < width; c += 1) {
+                int e = _plugboard.permute(c);
+                e = backward(last, posn, _core[forward(last, posn, e)]);
+                result.tables[j * width + c] = (char) _plugboard.permute(e);
+            }
+            long steps = _steps, carries = _carries;
+            step();
+            result.stepTotals[j + 1] =
+                result.stepTotals[j] + (int) (_steps - steps);
+            result.carryTotals[j + 1] =
+                result.carryTotals[j] + (int) (_carries - carries);
+        }
+        return result;
+    }
+
+    /** Return my slots to SETTINGS, as saved from _settings. */
+    private void resetSettings(int[] settings) {
+        System.arraycopy(settings, 0, _settings, 0, _numRotors);
+        _coreStale = true;
+        _quiet = UNKNOWN;
+    }
+
+    /** Return true iff the settings of my slots can be encoded in a
+     *  long. */
+    private boolean encodable() {
+        long states = 1;
+        for (int i = 1; i < _numRotors; i += 1) {
+            if (states > Long.MAX_VALUE / _core.length) {
+                return false;
+            }
+            states *= _core.length;
+        }
+        return true;
+    }
+
+    /** Return SETTINGS, the settings of my slots, encoded in a long. */
+    private long encode(int[] settings) {
+        long result = 0;
+        for (int i = 1; i < _numRotors; i += 1) {
+            result = result * _core.length + settings[i];
+        }
+        return result;
+    }
+
+    /** Set my slots to the settings encoded as STATE. */
+    private void decode(long state) {
+        for (int i = _numRotors - 1; i > 0; i -= 1) {
+            _settings[i] = (int) (state % _core.length);
+            state /= _core.length;
+        }
+        _coreStale = true;
+        _quiet = UNKNOWN;
+    }
+
+    /** Recompute _core, the signal path from the left side of my rightmost
+     *  rotor through the reflector and back, for the current settings of
+     *  all rotors but the rightmost.  The rightmost rotor steps on every
+     *  key press, so it stays out of the table; everything to its left
+     *  only changes when a carry moves some rotor, and only then is this
+     *  called. */
+    private void compileCore() {
+        for (int c = 0; c < _core.length; c++) {
+            int e = c;
+            for (int i = _numRotors - 2; i >= 0; i--) {
+                e = forward(i, _settings[i], e);
+            }
+            for (int i = 1; i < _numRotors - 1; i++) {
+                e = backward(i, _settings[i], e);
+            }
+            _core[c] = e;
+        }
+        _coreStale = false;
     }
 
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String temp = "";
+        StringBuilder result = new StringBuilder(msg.length());
         for (int i = 0; i < msg.length(); i++) {
-            temp += _alphabet.toChar(convert(_alphabet.toInt(msg.charAt(i))));
+            result.append(_alphabet.toChar(convert(
+                _alphabet.toInt(msg.charAt(i)))));
         }
-        return temp;
+        return result.toString();
     }
 
+    /** Number of characters converted at a time by the char and byte
+     *  batch conversions. */
+    private static final int BATCH_SIZE = 4096;
+
+    /** Largest character that fits in a byte. */
+    private static final int MAX_BYTE = 0xff;
+
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
 
@@ -148,9 +829,83 @@ class Machine {
     /** Temporary storage of collection of rotors. */
     private Collection<Rotor> _allRotorsTemp;
 
-    /** Array of all rotors for easy access. */
-    private Rotor[] _allRotors;
+    /** Array of all rotors for easy access.  Not modified after
+     *  construction, and so shared by copies. */
+    private final Rotor[] _allRotors;
+
+    /** Maps the name of each rotor to its index in _allRotors.  Not
+     *  modified after construction, and so shared by copies. */
+    private final HashMap<String, Integer> _rotorIndex;
+
+    /** For each rotor in _allRotors, the value of _insertion when it was
+     *  last inserted, or null until rotors are first inserted. */
+    private int[] _insertedAt;
+
+    /** Number of calls to insertRotors so far. */
+    private int _insertion;
 
     /** Array of my rotors for easy access. */
-    private Rotor[] _myRotors;
+    private final Rotor[] _myRotors;
+
+    /** The setting of each of my slots (always 0 for the reflector). */
+    private final int[] _settings;
+
+    /** The ring setting of each of my slots (always 0 for the
+     *  reflector), or -1 for a slot whose tables are not yet set. */
+    private final int[] _rings;
+
+    /** For each slot, its rotor's forward and backward conversion
+     *  tables for the slot's ring setting, indexed by setting, or null
+     *  if the alphabet is too large for tables. */
+    private final int[][][] _forward, _backward;
+
+    /** Mapping of the signal path through all rotors but the rightmost,
+     *  in their current settings. */
+    private final int[] _core;
+
+    /** True iff _core does not reflect the current rotor settings. */
+    private boolean _coreStale;
+
+    /** Number of key presses, starting with the next, that will move only
+     *  my rightmost rotor, or UNKNOWN if that must be recomputed. */
+    private int _quiet;
+
+    /** Number of presses from a new setting within which a cycle is
+     *  sought in the keystream cache. */
+    private static final int MAX_LEAD_IN = 8;
+
+    /** Value of _quiet when it is not known. */
+    private static final int UNKNOWN = -1;
+
+    /** Number of single-position rotor advances made by key presses. */
+    private long _steps;
+
+    /** Number of carries made from a rotor at a notch. */
+    private long _carries;
+
+    /** Source of keystreams, or null if they are not used. */
+    private KeystreamCache _keystreamCache;
+
+    /** Keystream through the cycle of my settings, or null if it is not
+     *  yet known or there is none. */
+    private KeystreamCache.Keystream _keystream;
+
+    /** Position in _keystream of my current settings, once _tail is 0. */
+    private int _keystreamPos;
+
+    /** Number of presses before my settings enter the cycle of
+     *  _keystream. */
+    private int _tail;
+
+    /** True iff it is known that my settings have no cycle short enough
+     *  to cache. */
+    private boolean _noKeystream;
+
+    /** Scratch buffer for batch conversions, or null if not yet
+     *  needed. */
+    private int[] _batch;
+
+    /** Computes skips, or null if not yet needed.  Never shared with a
+     *  copy. */
+    private Odometer _odometer;
 }
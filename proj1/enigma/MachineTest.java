@@ -46,6 +46,298 @@ public class MachineTest {
         checkMachine(_alpha, _numRotors, _pawls, _allRotors);
     }
 
+    @Test
+    public void resetAfterStepping() {
+        _alpha = UPPER;
+        _plug = new Permutation("(HQ) (EX) (IP) (TR) (BY)", _alpha);
+        rotorSet();
+        Machine tested = new Machine(_alpha, 5, 4, _allRotors);
+        tested.setPlugboard(_plug);
+        tested.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        tested.setRotors("AXLE");
+        String plain = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        String cipher = tested.convert(plain);
+        tested.setRotors("AXLE");
+        assertEquals(cipher, tested.convert(plain));
+        tested.setRotors("AXLE");
+        assertEquals(plain, tested.convert(cipher));
+    }
+
+    @Test
+    public void copyIsIndependent() {
+        _alpha = UPPER;
+        rotorSet();
+        Machine original = new Machine(_alpha, 5, 4, _allRotors);
+        original.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                              _alpha));
+        original.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        original.setRotors("AXLE");
+        String plain = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        Machine copy = original.copy();
+        String cipher = original.convert(plain);
+        assertEquals(cipher, copy.convert(plain));
+        assertEquals(copy.convert(plain), original.convert(plain));
+    }
+
+    @Test
+    public void machinesShareRotors() {
+        rotorSet();
+        Machine first = new Machine(UPPER, 5, 4, _allRotors);
+        Machine second = new Machine(UPPER, 5, 4, _allRotors);
+        String[] order = {"B", "Beta", "III", "IV", "I"};
+        first.insertRotors(order);
+        second.insertRotors(order);
+        first.setRotors("AXLE");
+        second.setRotors("AXLE");
+        String plain = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        for (int i = 0; i < plain.length(); i += 1) {
+            int c = UPPER.toInt(plain.charAt(i));
+            assertEquals(first.convert(c), second.convert(c));
+        }
+    }
+
+    @Test
+    public void snapshotRestore() {
+        rotorSet();
+        Machine tested = new Machine(UPPER, 5, 4, _allRotors);
+        tested.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        tested.setRotors("AXLE");
+        tested.setRings("BCDE");
+        tested.setPlugboard(new Permutation("(HQ) (EX)", UPPER));
+        tested.convert("PRELUDE");
+        Machine.State saved = tested.snapshot();
+        String plain = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        String cipher = tested.convert(plain);
+        tested.insertRotors(new String[] {"C", "Gamma", "V", "VI", "II"});
+        tested.setRotors("QQQQ");
+        tested.setRings("ZZZZ");
+        tested.setPlugboard(new Permutation("", UPPER));
+        tested.convert(plain);
+        tested.restore(saved);
+        assertEquals(cipher, tested.convert(plain));
+        Machine other = new Machine(UPPER, 5, 4, _allRotors);
+        other.restore(saved);
+        assertEquals(cipher, other.convert(plain));
+    }
+
+    @Test
+    public void ringSettings() {
+        rotorSet();
+        Machine tested = new Machine(UPPER, 5, 3, _allRotors);
+        tested.insertRotors(new String[] {"B", "Beta", "I", "II", "III"});
+        tested.setRotors("AAAA");
+        assertEquals("BDZGO", tested.convert("AAAAA"));
+        tested.setRotors("AAAA");
+        tested.setRings("ABBB");
+        assertEquals("EWTYX", tested.convert("AAAAA"));
+        assertEquals(1, tested.ring(4));
+        tested.setRotors("AAAA");
+        tested.clearRings();
+        assertEquals("BDZGO", tested.convert("AAAAA"));
+        tested.insertRotors(new String[] {"B", "Beta", "I", "II", "III"});
+        assertEquals(0, tested.ring(4));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void ringSettingTooShort() {
+        rotorSet();
+        Machine tested = new Machine(UPPER, 5, 3, _allRotors);
+        tested.insertRotors(new String[] {"B", "Beta", "I", "II", "III"});
+        tested.setRings("AAA");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void insertUnknownRotor() {
+        rotorSet();
+        Machine tested = new Machine(UPPER, 5, 3, _allRotors);
+        tested.insertRotors(new String[] {"B", "Beta", "III", "IV", "IX"});
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void insertDuplicateRotor() {
+        rotorSet();
+        Machine tested = new Machine(UPPER, 5, 3, _allRotors);
+        tested.insertRotors(new String[] {"B", "Beta", "III", "IV", "III"});
+    }
+
+    /** Check that skipping PRESSES key presses on a machine with the
+     *  rotors named ROTORS, starting at SETTING, leaves it in the same
+     *  state as converting that many characters. */
+    private void checkSkip(String[] rotors, String setting, long presses) {
+        Machine stepped = new Machine(UPPER, rotors.length, 3, _allRotors);
+        stepped.insertRotors(rotors);
+        stepped.setRotors(setting);
+        Machine skipped = stepped.copy();
+        for (long i = 0; i < presses; i += 1) {
+            stepped.convert(0);
+        }
+        skipped.skip(presses);
+        String probe = "THEQUICKBROWNFOXJUMPSOVERTHELAZYDOGTHEQUICKBROWNFOX";
+        assertEquals(msg("skip", "%s %s + %d", String.join(" ", rotors),
+                         setting, presses),
+                     stepped.convert(probe), skipped.convert(probe));
+    }
+
+    @Test
+    public void skipMatchesStepping() {
+        rotorSet();
+        _allRotors.add(new MovingRotor("DENSE",
+            new Permutation(NAVALA.get("IV"), UPPER), "ABCDJKLMXYZ"));
+        String[][] orders = {
+            {"B", "Beta", "III", "IV", "I"},
+            {"C", "Gamma", "VI", "VII", "VIII"},
+            {"B", "Beta", "DENSE", "II", "V"},
+            {"C", "Beta", "VI", "DENSE", "VIII"},
+            {"B", "Gamma", "DENSE", "VI", "DENSE2"},
+        };
+        _allRotors.add(new MovingRotor("DENSE2",
+            new Permutation(NAVALA.get("V"), UPPER), "AZMN"));
+        String[] settings = {"AAAA", "AXLE", "ZDQV", "ALMZ", "QEVZ", "AKJY"};
+        long[] counts = {0, 1, 2, 25, 26, 27, 675, 676, 677, 5000, 17603};
+        for (String[] order : orders) {
+            for (String setting : settings) {
+                for (long presses : counts) {
+                    checkSkip(order, setting, presses);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void batchMatchesSingle() {
+        rotorSet();
+        Machine single = new Machine(UPPER, 5, 4, _allRotors);
+        single.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR)", UPPER));
+        single.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        single.setRotors("AXLE");
+        Machine batch = single.copy();
+        char[] in = new char[3000];
+        for (int i = 0; i < in.length; i += 1) {
+            in[i] = UPPER_STRING.charAt((i * 7 + i / 26) % 26);
+        }
+        String expected = single.convert(new String(in));
+        char[] chars = new char[in.length];
+        batch.convert(in, 0, 1000, chars);
+        batch.convert(in, 1000, 2000, chars);
+        assertEquals(expected, new String(chars));
+
+        batch.setRotors("AXLE");
+        byte[] bytes = new String(in).getBytes();
+        batch.convert(bytes, 0, bytes.length, bytes);
+        assertEquals(expected, new String(bytes));
+    }
+
+    @Test
+    public void countsStepsAndCarries() {
+        rotorSet();
+        Machine single = new Machine(UPPER, 5, 4, _allRotors);
+        single.insertRotors(new String[] {"B", "Beta", "III", "II", "I"});
+        single.setRotors("AADQ");
+        Machine batch = single.copy();
+        single.convert("AA");
+        assertEquals(5, single.rotorSteps());
+        assertEquals(2, single.carries());
+        single.convert("AAAAAAAAAAAAAAAAAAAA");
+        assertEquals(25, single.rotorSteps());
+        assertEquals(2, single.carries());
+
+        int[] buf = new int[22];
+        batch.convert(buf, 0, buf.length);
+        assertEquals(25, batch.rotorSteps());
+        assertEquals(2, batch.carries());
+        assertEquals(0, batch.copy().rotorSteps());
+    }
+
+    @Test
+    public void keystreamSharedAcrossCycle() {
+        rotorSet();
+        KeystreamCache cache = new KeystreamCache(1 << 21);
+        Machine cached = new Machine(UPPER, 5, 4, _allRotors);
+        cached.setKeystreamCache(cache);
+        cached.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR)", UPPER));
+        cached.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        Machine plain = cached.copy();
+        plain.setKeystreamCache(null);
+        for (String setting : new String[] {"AXLE", "AXLF", "AQEV"}) {
+            cached.setRotors(setting);
+            plain.setRotors(setting);
+            int[] got = new int[20000], want = new int[got.length];
+            for (int i = 0; i < got.length; i += 1) {
+                got[i] = want[i] = (i * 7 + i / 26) % 26;
+            }
+            cached.convert(got, 0, 3);
+            cached.convert(got, 3, got.length - 3);
+            plain.convert(want, 0, want.length);
+            assertArrayEquals(want, got);
+            assertEquals(plain.setting(2), cached.setting(2));
+            assertEquals(plain.setting(4), cached.setting(4));
+            assertEquals(plain.rotorSteps(), cached.rotorSteps());
+        }
+        assertEquals(1, cache.count());
+    }
+
+    @Test
+    public void keystreamNeedsShortPeriod() {
+        rotorSet();
+        KeystreamCache cache = new KeystreamCache(1 << 10);
+        Machine machine = new Machine(UPPER, 5, 4, _allRotors);
+        machine.setKeystreamCache(cache);
+        machine.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        machine.setRotors("AXLE");
+        Machine plain = machine.copy();
+        plain.setKeystreamCache(null);
+        int[] got = new int[1000], want = new int[got.length];
+        machine.convert(got, 0, got.length);
+        plain.convert(want, 0, want.length);
+        assertArrayEquals(want, got);
+        assertEquals(0, cache.count());
+    }
+
+    @Test
+    public void byteMachineMatchesIndices() {
+        char[] chars = new char[ByteMachine.SYMBOLS];
+        for (int i = 0; i < chars.length; i += 1) {
+            chars[i] = (char) (0x100 + i);
+        }
+        Alphabet bytes = new Alphabet(new String(chars));
+        Collection<Rotor> rotors = new ArrayList<Rotor>();
+        int[] reflect = new int[chars.length];
+        int[] fast = new int[chars.length];
+        int[] slow = new int[chars.length];
+        for (int i = 0; i < chars.length; i += 1) {
+            reflect[i] = i ^ 1;
+            fast[i] = (i * 37 + 11) % chars.length;
+            slow[i] = (i * 101 + 3) % chars.length;
+        }
+        rotors.add(new Reflector("R", new Permutation(reflect, bytes)));
+        rotors.add(new MovingRotor("S", new Permutation(slow, bytes),
+                                   new String(chars, 7, 2)));
+        rotors.add(new MovingRotor("F", new Permutation(fast, bytes),
+                                   new String(chars, 200, 1)));
+        Machine single = new Machine(bytes, 3, 2, rotors);
+        single.insertRotors(new String[] {"R", "S", "F"});
+        single.setRotors(new String(chars, 250, 2));
+        ByteMachine batch = new ByteMachine(single.copy());
+        byte[] data = new byte[20000];
+        for (int i = 0; i < data.length; i += 1) {
+            data[i] = (byte) (i * 13 + i / 256);
+        }
+        byte[] expected = new byte[data.length];
+        for (int i = 0; i < data.length; i += 1) {
+            expected[i] = (byte) single.convert(data[i] & 0xff);
+        }
+        batch.convert(data, 0, data.length);
+        for (int i = 0; i < data.length; i += 1) {
+            assertEquals(msg("bytes", "byte %d", i), expected[i], data[i]);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void byteMachineNeedsByteAlphabet() {
+        rotorSet();
+        new ByteMachine(new Machine(UPPER, 5, 4, _allRotors));
+    }
+
     public void rotorSet() {
         Rotor r1 = new MovingRotor("I",
             new Permutation("(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)",
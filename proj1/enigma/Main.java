@@ -1,12 +1,32 @@
 package enigma;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.ArrayList;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 import static enigma.EnigmaException.*;
 
@@ -16,14 +36,41 @@ import static enigma.EnigmaException.*;
 public final class Main {
 
     /** Process a sequence of encryptions and decryptions, as
-     *  specified by ARGS, where 1 <= ARGS.length <= 3.
+     *  specified by ARGS, where 1 <= ARGS.length <= 3, not counting
+     *  options.
      *  ARGS[0] is the name of a configuration file.
      *  ARGS[1] is optional; when present, it names an input file
      *  containing messages.  Otherwise, input comes from the standard
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.
+     *  Options precede the file names.  With --mmap, both the input and
+     *  the output file must be given; the input is memory-mapped and
+     *  read as single-byte characters.  With --parallel, the messages
+     *  following each settings line are converted concurrently.  With
+     *  --cache DIR, compiled configurations are kept in directory DIR and
+     *  reused as long as the configuration file is unchanged.  With
+     *  --bytes SETTINGS, the input is arbitrary binary data that is
+     *  converted byte for byte, with no grouping, by a machine whose
+     *  alphabet must have 256 characters, byte B standing for the
+     *  character with index B; SETTINGS has the form of a settings line
+     *  without its leading '*'.  With --server ADDRESS, only the
+     *  configuration file is given, and requests from clients are served
+     *  (see EnigmaServer) at ADDRESS, which is a port number on the
+     *  loopback interface or the path of a Unix domain socket, until the
+     *  program is killed.  With --metrics SECONDS, counts of the work
+     *  done and estimates of the time spent parsing, converting, and
+     *  formatting are published over JMX (see Metrics) as the input is
+     *  processed, printed on the standard error every SECONDS seconds
+     *  unless SECONDS is 0, and printed there once more at the end.
+     *  With --keystream MEGABYTES, the substitutions made at each rotor
+     *  setting are cached, up to MEGABYTES megabytes in all, for settings
+     *  lines whose rotor settings repeat within a short enough period
+     *  (see KeystreamCache).  With --group N, converted letters are
+     *  printed in groups of N rather than five, and with --width N, long
+     *  message lines are broken between groups so that no printed line is
+     *  longer than N characters. */
     public static void main(String... args) {
         try {
             new Main(args).process();
@@ -36,86 +83,426 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        int first;
+        for (first = 0; first < args.length; first += 1) {
+            if (!args[first].startsWith("--")) {
+                break;
+            }
+            switch (args[first]) {
+            case "--mmap":
+                _mapped = true;
+                break;
+            case "--parallel":
+                _parallel = true;
+                break;
+            case "--bytes":
+                first += 1;
+                if (first == args.length) {
+                    throw error("--bytes requires a settings line");
+                }
+                _byteSettings = args[first];
+                break;
+            case "--server":
+                first += 1;
+                if (first == args.length) {
+                    throw error("--server requires an address");
+                }
+                _serverAddress = args[first];
+                break;
+            case "--metrics":
+                first += 1;
+                if (first == args.length || !args[first].matches("\\d+")) {
+                    throw error("--metrics requires a number of seconds");
+                }
+                _metricsInterval = Long.parseLong(args[first]);
+                _metrics = new Metrics();
+                break;
+            case "--keystream":
+                first += 1;
+                if (first == args.length || !args[first].matches("\\d+")) {
+                    throw error("--keystream requires a number of "
+                                + "megabytes");
+                }
+                _keystreamCache = new KeystreamCache(
+                    Long.parseLong(args[first]) * BYTES_PER_MEGABYTE);
+                break;
+            case "--group":
+                first += 1;
+                _groupSize = count(args, first, "--group", 1);
+                break;
+            case "--width":
+                first += 1;
+                _lineWidth = count(args, first, "--width", 0);
+                break;
+            case "--cache":
+                first += 1;
+                if (first == args.length) {
+                    throw error("--cache requires a directory");
+                }
+                _cache = new ConfigCache(new File(args[first]));
+                break;
+            default:
+                throw error("unknown option: %s", args[first]);
+            }
+        }
+        args = Arrays.copyOfRange(args, first, args.length);
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
+        if (_mapped && args.length != 3) {
+            throw error("--mmap requires input and output files");
+        }
+
+        if (_byteSettings != null && (_mapped || _parallel)) {
+            throw error("--bytes cannot be combined with --mmap or "
+                        + "--parallel");
+        }
+        if (_serverAddress != null
+            && (_mapped || _parallel || _byteSettings != null)) {
+            throw error("--server cannot be combined with --mmap, "
+                        + "--parallel or --bytes");
+        }
+        if (_serverAddress != null && _metrics != null) {
+            throw error("--server cannot be combined with --metrics");
+        }
+        if (_serverAddress != null && args.length != 1) {
+            throw error("--server takes only a configuration file");
+        }
+
+        _configName = args[0];
+
+        if (_serverAddress != null) {
+            return;
+        }
 
-        _config = getInput(args[0]);
+        if (_byteSettings != null) {
+            openStreams(args);
+            return;
+        }
 
-        if (args.length > 1) {
-            _input = getInput(args[1]);
+        if (_mapped) {
+            _inChannel = getChannel(args[1], StandardOpenOption.READ);
+        } else if (args.length > 1) {
+            _input = getReader(args[1]);
         } else {
-            _input = new Scanner(System.in);
+            _input = new InputStreamReader(counted(System.in));
         }
 
         if (args.length > 2) {
-            _output = getOutput(args[2]);
+            _outChannel =
+                counted(getChannel(args[2], StandardOpenOption.WRITE,
+                                   StandardOpenOption.CREATE,
+                                   StandardOpenOption.TRUNCATE_EXISTING));
         } else {
-            _output = System.out;
+            _outChannel = counted(
+                new FileOutputStream(FileDescriptor.out).getChannel());
         }
     }
 
-    /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    /** Return the value of option OPTION, which is ARGS[K], as an
+     *  integer that must be at least MIN. */
+    private static int count(String[] args, int k, String option, int min) {
+        if (k == args.length || !args[k].matches("\\d{1,9}")
+            || Integer.parseInt(args[k]) < min) {
+            throw error("%s requires a number of at least %d", option, min);
+        }
+        return Integer.parseInt(args[k]);
+    }
+
+    /** Open _inStream and _outStream on the input and output files
+     *  named in ARGS, or on the standard input and output. */
+    private void openStreams(String[] args) {
+        try {
+            _inStream = counted(args.length > 1
+                                ? new FileInputStream(args[1]) : System.in);
+        } catch (IOException excp) {
+            throw error("could not open %s", args[1]);
+        }
         try {
-            return new Scanner(new File(name));
+            _outStream = new BufferedOutputStream(
+                counted(args.length > 2 ? new FileOutputStream(args[2])
+                        : System.out),
+                BUFFER_SIZE);
+        } catch (IOException excp) {
+            throw error("could not open %s", args[2]);
+        }
+    }
+
+    /** Return the contents of the file named NAME. */
+    private byte[] getContents(String name) {
+        try {
+            return Files.readAllBytes(Paths.get(name));
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Return a Reader for the file named NAME. */
+    private Reader getReader(String name) {
         try {
-            return new PrintStream(new File(name));
+            return new InputStreamReader(counted(new FileInputStream(name)));
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
-    /** Configure an Enigma machine from the contents of configuration
-     *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
+    /** Return a FileChannel on the file named NAME, opened with
+     *  OPTIONS. */
+    private FileChannel getChannel(String name,
+                                   StandardOpenOption... options) {
+        try {
+            return FileChannel.open(Paths.get(name), options);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return the output charset: the platform's default, or with
+     *  --mmap, ISO-8859-1. */
+    private Charset outputCharset() {
+        return _mapped ? StandardCharsets.ISO_8859_1
+            : Charset.defaultCharset();
+    }
+
+    /** Return true iff the output charset encodes blank, newline, and
+     *  each character of _alphabet as the single byte equal to its
+     *  code, so that output may be written without encoding it. */
+    private boolean bytePerChar() {
+        StringBuilder chars = new StringBuilder(" \n");
+        for (int i = 0; i < _alphabet.size(); i += 1) {
+            chars.append(_alphabet.toChar(i));
+        }
+        byte[] bytes = chars.toString().getBytes(outputCharset());
+        if (bytes.length != chars.length()) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i += 1) {
+            if ((bytes[i] & BYTE_MASK) != chars.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return a formatter printing converted messages to _outChannel,
+     *  byte for byte if possible, and otherwise through _output, which
+     *  it sets to a Writer encoding them in the output charset. */
+    private GroupFormatter openFormatter() {
+        if (bytePerChar()) {
+            return GroupFormatter.of(_outChannel, _alphabet, _groupSize,
+                                     _lineWidth);
+        }
+        openWriter();
+        return GroupFormatter.of(_output, _alphabet, _groupSize, _lineWidth);
+    }
+
+    /** Set _output to a Writer encoding its characters in the output
+     *  charset onto _outChannel. */
+    private void openWriter() {
+        if (_mapped) {
+            _output = Channels.newWriter(
+                _outChannel, StandardCharsets.ISO_8859_1.newEncoder(),
+                BUFFER_SIZE);
+        } else {
+            _output = new BufferedWriter(
+                Channels.newWriter(_outChannel, outputCharset()),
+                BUFFER_SIZE);
+        }
+    }
+
+    /** Return IN, with its bytes counted in _metrics if there is one. */
+    private InputStream counted(InputStream in) {
+        return _metrics == null ? in : _metrics.countInput(in);
+    }
+
+    /** Return OUT, with its bytes counted in _metrics if there is one. */
+    private OutputStream counted(OutputStream out) {
+        return _metrics == null ? out : _metrics.countOutput(out);
+    }
+
+    /** Return OUT, with its bytes counted in _metrics if there is one. */
+    private WritableByteChannel counted(WritableByteChannel out) {
+        return _metrics == null ? out : _metrics.countOutput(out);
+    }
+
+    /** Process the input as described for main, measuring the work in
+     *  _metrics if there is one. */
     private void process() {
-        Machine M = readConfig();
-        String tempMSG = "";
-        int count = 0;
-        while (_input.hasNext()) {
-            if (_input.next().equals("*")) {
-                setUp(M, _input.nextLine());
-                count++;
+        if (_metrics == null) {
+            convertInput();
+            return;
+        }
+        _metrics.register();
+        if (_metricsInterval > 0) {
+            _metrics.reportEvery(_metricsInterval, System.err);
+        }
+        try {
+            convertInput();
+        } finally {
+            _metrics.close();
+        }
+        System.err.printf("Metrics: %s%n", _metrics.report());
+    }
+
+    /** Configure an Enigma machine from the contents of configuration
+     *  file _configName and apply it to the messages in _input, sending the
+     *  results to _output.  Input is consumed a buffer at a time and
+     *  each character is converted as it arrives, so memory use does
+     *  not depend on the length of the input or of any line. */
+    private void convertInput() {
+        Machine machine = readConfig();
+        machine.setKeystreamCache(_keystreamCache);
+        if (_byteSettings != null) {
+            processBytes(machine);
+            return;
+        }
+        if (_serverAddress != null) {
+            try (EnigmaServer server = new EnigmaServer(
+                     machine, EnigmaServer.address(_serverAddress))) {
+                System.err.printf("Serving at %s%n", server.localAddress());
+                server.serve();
             }
-            while (!_input.hasNext("\\*") && _input.hasNextLine()) {
-                tempMSG += _input.nextLine().toUpperCase();
-                tempMSG = tempMSG.replaceAll("\\s", "");
-                printMessageLine(M.convert(tempMSG));
-                tempMSG = "";
-                if (_input.hasNextLine()) {
-                    _output.println();
+            return;
+        }
+        try {
+            try {
+                if (_parallel) {
+                    openWriter();
+                    _processor =
+                        new ParallelMessageProcessor(machine, _alphabet,
+                                                     _output,
+                                                     ForkJoinPool.commonPool(),
+                                                     _groupSize, _lineWidth);
+                } else {
+                    _processor =
+                        new MessageProcessor(machine, openFormatter());
                 }
+                _processor.setMetrics(_metrics);
+                if (_mapped) {
+                    readMapped();
+                } else {
+                    readStream();
+                }
+                _processor.finish();
+            } finally {
+                if (_output != null) {
+                    _output.close();
+                }
+                _outChannel.close();
             }
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
         }
-        if (count == 0) {
+        if (!_processor.configured()) {
             throw new EnigmaException("No configuration!");
         }
     }
 
-    /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
+    /** Set MACHINE according to _byteSettings and convert the bytes of
+     *  _inStream through it to _outStream. */
+    private void processBytes(Machine machine) {
+        ByteMachine bytes = new ByteMachine(machine);
+        new SettingsParser(machine).configure(_byteSettings);
+        try {
+            try {
+                bytes.convert(_inStream, _outStream);
+            } finally {
+                _inStream.close();
+                _outStream.close();
+            }
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+        if (_metrics != null) {
+            _metrics.characters(_metrics.getBytesRead());
+            _metrics.rotorSteps(machine.rotorSteps());
+            _metrics.notchCarries(machine.carries());
+        }
+    }
+
+    /** Pass the contents of _input to _processor. */
+    private void readStream() throws IOException {
+        char[] buf = new char[BUFFER_SIZE];
+        int n;
+        while ((n = _input.read(buf)) > 0) {
+            _processor.process(buf, 0, n);
+        }
+    }
+
+    /** Pass each byte of _inChannel to _processor as a character, mapping
+     *  the file into memory MAP_WINDOW bytes at a time. */
+    private void readMapped() throws IOException {
+        byte[] buf = new byte[BUFFER_SIZE];
+        char[] chars = new char[BUFFER_SIZE];
+        long size = _inChannel.size();
+        for (long pos = 0; pos < size; pos += MAP_WINDOW) {
+            ByteBuffer window =
+                _inChannel.map(FileChannel.MapMode.READ_ONLY, pos,
+                               Math.min(MAP_WINDOW, size - pos));
+            while (window.hasRemaining()) {
+                int n = Math.min(buf.length, window.remaining());
+                window.get(buf, 0, n);
+                for (int i = 0; i < n; i++) {
+                    chars[i] = (char) (buf[i] & BYTE_MASK);
+                }
+                _processor.process(chars, 0, n);
+                if (_metrics != null) {
+                    _metrics.bytesRead(n);
+                }
+            }
+        }
+        _inChannel.close();
+    }
+
+    /** Return the machine given by loadConfig, timing its loading in
+     *  _metrics if there is one. */
     private Machine readConfig() {
+        if (_metrics == null) {
+            return loadConfig();
+        }
+        long start = _metrics.parseTimer().start();
+        Machine result = loadConfig();
+        _metrics.parseTimer().stop(start);
+        return result;
+    }
+
+    /** Return an Enigma machine configured from the contents of configuration
+     *  file _configName, using a compiled image from _cache if there is
+     *  one. */
+    private Machine loadConfig() {
+        byte[] text = getContents(_configName);
+        if (_cache != null) {
+            Machine cached = _cache.load(text);
+            if (cached != null) {
+                _alphabet = cached.alphabet();
+                return cached;
+            }
+        }
+        Machine result = parseConfig(new String(text));
+        _alphabet = result.alphabet();
+        if (_cache != null) {
+            _cache.store(text, _alphabet, result.numRotors(),
+                         result.numPawls(), result.availableRotors());
+        }
+        return result;
+    }
+
+    /** Return an Enigma machine configured from TEXT, the contents of a
+     *  configuration file. */
+    static Machine parseConfig(String text) {
+        Scanner config = new Scanner(text);
         try {
-            String nothing = _config.next();
-            int howManyRotors = _config.nextInt();
-            int howManyPawls = _config.nextInt();
-            _alphabet = new UpperCaseAlphabet();
+            Alphabet alphabet = Alphabet.of(config.next());
+            int howManyRotors = config.nextInt();
+            int howManyPawls = config.nextInt();
             Collection<Rotor> everyRotor = new ArrayList<Rotor>();
-            while (_config.hasNext()) {
-                String tempName = _config.next().toUpperCase();
-                String tempDesig = _config.next();
+            while (config.hasNext()) {
+                String tempName = config.next().toUpperCase();
+                String tempDesig = config.next();
                 String tempNotches = "";
                 String tempPerm = "";
-                while (_config.hasNext("\\(.*")) {
-                    tempPerm += _config.next();
+                while (config.hasNext("\\(.*")) {
+                    tempPerm += config.next();
                     tempPerm += " ";
                 }
                 if (tempDesig.charAt(0) == 'M') {
@@ -123,81 +510,93 @@ public final class Main {
                         tempNotches += tempDesig.charAt(i);
                     }
                     Rotor thisRotor = new MovingRotor(tempName,
-                        new Permutation(tempPerm, _alphabet), tempNotches);
+                        new Permutation(tempPerm, alphabet), tempNotches);
                     everyRotor.add(thisRotor);
                 } else if (tempDesig.charAt(0) == 'N') {
                     Rotor thisRotor = new FixedRotor(tempName,
-                        new Permutation(tempPerm, _alphabet));
+                        new Permutation(tempPerm, alphabet));
                     everyRotor.add(thisRotor);
                 } else if (tempDesig.charAt(0) == 'R') {
                     Rotor thisRotor = new Reflector(tempName,
-                        new Permutation(tempPerm, _alphabet));
+                        new Permutation(tempPerm, alphabet));
                     everyRotor.add(thisRotor);
                 }
             }
-            return new Machine(_alphabet, howManyRotors,
+            return new Machine(alphabet, howManyRotors,
                 howManyPawls, everyRotor);
         } catch (NoSuchElementException excp) {
             throw error("configuration file truncated");
         }
     }
 
-    /** Return a rotor, reading its description from _config. */
-    private Rotor readRotor() {
-        try {
-            return null;
-        } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
-        }
-    }
-
-    /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
-        Scanner settingsScan = new Scanner(settings);
-        String [] insert = new String[M.numRotors()];
-        String rotorset = "";
-        String cycling = "";
-        int count = 0;
-        for (int i = 0; i < M.numRotors(); i++) {
-            insert[i] = settingsScan.next();
-        }
-        rotorset = settingsScan.next();
-        while (settingsScan.hasNext() && settingsScan.hasNext("\\(.*")) {
-            cycling += settingsScan.next();
-            cycling += " ";
-        }
-        M.setPlugboard(new Permutation(cycling, new UpperCaseAlphabet()));
-        M.insertRotors(insert);
-        M.setRotors(rotorset);
-    }
-
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        String printMSG = "";
-        int msgLength = msg.length();
-        int groups = msgLength / 5;
-        int leftover = msgLength - (groups * 5);
-        for (int i = 0; i < groups; i++) {
-            printMSG += msg.substring(i * 5, (i * 5) + 5);
-            printMSG += " ";
-        }
-        if (leftover > 0) {
-            printMSG += msg.substring(msgLength - leftover);
-        }
-        _output.print(printMSG);
-    }
-
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
     /** Source of input messages. */
-    private Scanner _input;
+    private Reader _input;
+
+    /** Name of the machine configuration file. */
+    private String _configName;
 
-    /** Source of machine configuration. */
-    private Scanner _config;
+    /** Compiled configurations, or null if they are not cached. */
+    private ConfigCache _cache;
 
     /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    private WritableByteChannel _outChannel;
+
+    /** Writer encoding messages onto _outChannel, or null if they are
+     *  written there a byte per character. */
+    private Writer _output;
+
+    /** Number of letters in each printed group. */
+    private int _groupSize = GroupFormatter.GROUP_SIZE;
+
+    /** Maximum length of a printed line, or 0 if there is none. */
+    private int _lineWidth;
+
+    /** True iff input is to be memory-mapped from _inChannel. */
+    private boolean _mapped;
+
+    /** Source of input messages when _mapped. */
+    private FileChannel _inChannel;
+
+    /** Number of bytes of input mapped into memory at once. */
+    private static final long MAP_WINDOW = 1L << 30;
+
+    /** Address at which to serve requests, or null if not serving. */
+    private String _serverAddress;
+
+    /** Settings for byte mode, or null if not in byte mode. */
+    private String _byteSettings;
+
+    /** Source of binary input in byte mode. */
+    private InputStream _inStream;
+
+    /** Destination of binary output in byte mode. */
+    private OutputStream _outStream;
+
+    /** Mask selecting the low-order byte of an int. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** True iff messages are to be converted concurrently. */
+    private boolean _parallel;
+
+    /** Where the work done is measured, or null if it is not. */
+    private Metrics _metrics;
+
+    /** Seconds between reports of _metrics, or 0 for none until the
+     *  end. */
+    private long _metricsInterval;
+
+    /** Keystreams of the machine, or null if they are not cached. */
+    private KeystreamCache _keystreamCache;
+
+    /** Number of bytes in a megabyte. */
+    private static final long BYTES_PER_MEGABYTE = 1 << 20;
+
+    /** Converts the messages in the input. */
+    private InputProcessor _processor;
+
+    /** Size of the input and output buffers, in characters. */
+    private static final int BUFFER_SIZE = 1 << 16;
 }
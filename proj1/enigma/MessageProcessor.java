@@ -0,0 +1,243 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import static enigma.EnigmaException.*;
+
+/** Runs the text of an input file, a buffer at a time, through an Enigma
+ *  machine.  A line whose first non-blank character is '*' holds settings
+ *  for the messages that follow it; every other line is a message line
+ *  whose letters are converted and printed in groups (see
+ *  GroupFormatter), by default of five.
+ *  @author Bryan Lim
+ */
+class MessageProcessor implements InputProcessor {
+
+    /** A processor that runs messages through MACHINE, whose alphabet is
+     *  ALPHABET, and writes the results to OUTPUT. */
+    MessageProcessor(Machine machine, Alphabet alphabet, Writer output) {
+        _machine = machine;
+        _alphabet = alphabet;
+        _parser = new SettingsParser(machine);
+        _formatter = GroupFormatter.of(output, alphabet,
+                                       GroupFormatter.GROUP_SIZE, 0);
+    }
+
+    /** A processor that runs messages through MACHINE and prints the
+     *  results with FORMATTER. */
+    MessageProcessor(Machine machine, GroupFormatter formatter) {
+        _machine = machine;
+        _alphabet = machine.alphabet();
+        _parser = new SettingsParser(machine);
+        _formatter = formatter;
+    }
+
+    @Override
+    public void process(char[] buf, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            accept(buf[i]);
+        }
+        convertPending();
+        if (_metrics != null) {
+            record();
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (_state != LINE_START) {
+            accept('\n');
+        }
+        flushOutput();
+    }
+
+    /** Discard any partly read line and any output not yet written, and
+     *  forget that my machine was configured, so that I start afresh
+     *  (as after an error) on the next input. */
+    void reset() {
+        _state = LINE_START;
+        _settings.setLength(0);
+        _pendingLength = 0;
+        _configured = false;
+        _formatter.discard();
+    }
+
+    /** Set my machine according to SETTINGS, which has the format of a
+     *  settings line without its leading '*' (see SettingsParser). */
+    void configure(String settings) {
+        if (_metrics == null) {
+            _parser.configure(settings);
+        } else {
+            long start = _metrics.parseTimer().start();
+            _parser.configure(settings);
+            _metrics.parseTimer().stop(start);
+            _messages += 1;
+        }
+        _configured = true;
+    }
+
+    /** Record my work in METRICS from now on (or in nothing, if it is
+     *  null): the counts are added after each buffer of input. */
+    @Override
+    public void setMetrics(Metrics metrics) {
+        _metrics = metrics;
+        _recordedSteps = _machine.rotorSteps();
+        _recordedCarries = _machine.carries();
+    }
+
+    @Override
+    public boolean configured() {
+        return _configured;
+    }
+
+    /** Handle the next input character C. */
+    private void accept(char c) throws IOException {
+        switch (_state) {
+        case LINE_START:
+            if (c == '*') {
+                _settings.setLength(0);
+                _state = IN_SETTINGS;
+                break;
+            } else if (c != '\n' && Character.isWhitespace(c)) {
+                break;
+            }
+            _state = IN_MESSAGE;
+            acceptMessage(c);
+            break;
+        case IN_SETTINGS:
+            if (c == '\n') {
+                configure(_settings.toString());
+                _state = LINE_START;
+            } else {
+                _settings.append(c);
+            }
+            break;
+        default:
+            acceptMessage(c);
+            break;
+        }
+    }
+
+    /** Handle character C of a message line.  A letter that is not in
+     *  the alphabet is taken as its upper-case form. */
+    private void acceptMessage(char c) throws IOException {
+        if (c == '\n') {
+            convertPending();
+            _formatter.endLine();
+            _state = LINE_START;
+        } else if (!Character.isWhitespace(c)) {
+            if (!_configured) {
+                throw error("message without a configuration");
+            }
+            if (_pendingLength == _pending.length) {
+                convertPending();
+            }
+            if (!_alphabet.contains(c)) {
+                c = Character.toUpperCase(c);
+            }
+            _pending[_pendingLength] = _alphabet.toInt(c);
+            _pendingLength += 1;
+        }
+    }
+
+    /** Convert the letters in _pending and print them in groups. */
+    private void convertPending() throws IOException {
+        if (_metrics != null) {
+            convertPendingMeasured();
+            return;
+        }
+        _machine.convert(_pending, 0, _pendingLength);
+        groupPending();
+    }
+
+    /** Do what convertPending does, timing the conversion and the
+     *  grouping separately. */
+    private void convertPendingMeasured() throws IOException {
+        Metrics.Timer convert = _metrics.convertTimer();
+        long start = convert.start();
+        _machine.convert(_pending, 0, _pendingLength);
+        convert.stop(start);
+        _converted += _pendingLength;
+        Metrics.Timer format = _metrics.formatTimer();
+        start = format.start();
+        groupPending();
+        format.stop(start);
+    }
+
+    /** Print the converted letters in _pending in groups. */
+    private void groupPending() throws IOException {
+        _formatter.print(_pending, 0, _pendingLength);
+        _pendingLength = 0;
+    }
+
+    /** Write all pending output, and add the work done since it was
+     *  last recorded to my metrics, if any. */
+    private void flushOutput() throws IOException {
+        if (_metrics == null) {
+            _formatter.flush();
+        } else {
+            long start = _metrics.formatTimer().start();
+            _formatter.flush();
+            _metrics.formatTimer().stop(start);
+            record();
+        }
+    }
+
+    /** Add the counts accumulated since the last call to _metrics. */
+    private void record() {
+        long steps = _machine.rotorSteps(), carries = _machine.carries();
+        _metrics.characters(_converted);
+        _metrics.messages(_messages);
+        _metrics.rotorSteps(steps - _recordedSteps);
+        _metrics.notchCarries(carries - _recordedCarries);
+        _converted = _messages = 0;
+        _recordedSteps = steps;
+        _recordedCarries = carries;
+    }
+
+    /** Size of the buffer of pending letters. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Input states: at the start of a line, within a settings line,
+     *  and within a message line. */
+    private static final int LINE_START = 0, IN_SETTINGS = 1, IN_MESSAGE = 2;
+
+    /** The machine that messages are run through. */
+    private final Machine _machine;
+
+    /** Alphabet of _machine. */
+    private final Alphabet _alphabet;
+
+    /** Applies settings lines to _machine. */
+    private final SettingsParser _parser;
+
+    /** Prints converted messages. */
+    private final GroupFormatter _formatter;
+
+    /** Current input state (LINE_START, IN_SETTINGS, or IN_MESSAGE). */
+    private int _state = LINE_START;
+
+    /** True once some settings line has configured _machine. */
+    private boolean _configured;
+
+    /** Text of the settings line being read. */
+    private final StringBuilder _settings = new StringBuilder();
+
+    /** Indices of message letters not yet converted. */
+    private final int[] _pending = new int[BUFFER_SIZE];
+
+    /** Number of indices in _pending. */
+    private int _pendingLength;
+
+    /** Where my work is recorded, or null if it is not. */
+    private Metrics _metrics;
+
+    /** Number of letters converted and of settings lines processed
+     *  since my work was last recorded. */
+    private long _converted, _messages;
+
+    /** Rotor steps and carries of _machine when my work was last
+     *  recorded. */
+    private long _recordedSteps, _recordedCarries;
+}
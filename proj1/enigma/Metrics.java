@@ -0,0 +1,324 @@
+package enigma;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static enigma.EnigmaException.*;
+
+/** Counters and timers for a run of Main, which may be published over
+ *  JMX and reported periodically.  Any number of threads may record
+ *  into one Metrics at once.  The counters are LongAdders, which keep
+ *  concurrent updates from contending, and the code being measured adds
+ *  to them in bulk (a buffer or a message at a time) rather than per
+ *  character.  The timers are sampled: each timed operation is measured
+ *  with probability 1/N for the timer's N, and the measured times are
+ *  scaled by N, so that frequent short operations need not each pay for
+ *  two clock readings.  Where nothing is to be measured, no Metrics is
+ *  created at all, and the measured code skips its bookkeeping.
+ *  @author Bryan Lim
+ */
+final class Metrics implements MetricsMXBean, AutoCloseable {
+
+    /** A timer that measures a random 1/INTERVAL of the operations
+     *  timed with it. */
+    static final class Timer {
+
+        /** A timer sampling one operation in INTERVAL. */
+        Timer(int interval) {
+            _interval = interval;
+        }
+
+        /** Return a token with which to end the timing of an operation
+         *  that is starting: its start time if the operation is sampled,
+         *  and otherwise 0. */
+        long start() {
+            if (_interval > 1
+                && ThreadLocalRandom.current().nextInt(_interval) != 0) {
+                return 0;
+            }
+            return System.nanoTime();
+        }
+
+        /** Record the end of the operation whose timing began with
+         *  START, as returned by start(). */
+        void stop(long start) {
+            if (start != 0) {
+                _nanos.add((System.nanoTime() - start) * _interval);
+            }
+        }
+
+        /** Return the estimated total time of the operations timed, in
+         *  nanoseconds. */
+        long nanos() {
+            return _nanos.sum();
+        }
+
+        /** One over the fraction of operations measured. */
+        private final int _interval;
+        /** Sum of the scaled times of the operations measured. */
+        private final LongAdder _nanos = new LongAdder();
+    }
+
+    /** Add N to the number of message characters converted. */
+    void characters(long n) {
+        _characters.add(n);
+    }
+
+    /** Add N to the number of settings lines processed. */
+    void messages(long n) {
+        _messages.add(n);
+    }
+
+    /** Add N to the number of rotor steps. */
+    void rotorSteps(long n) {
+        _rotorSteps.add(n);
+    }
+
+    /** Add N to the number of notch carries. */
+    void notchCarries(long n) {
+        _notchCarries.add(n);
+    }
+
+    /** Add N to the number of bytes read. */
+    void bytesRead(long n) {
+        _bytesRead.add(n);
+    }
+
+    /** Add N to the number of bytes written. */
+    void bytesWritten(long n) {
+        _bytesWritten.add(n);
+    }
+
+    /** Return the timer for parsing configurations and settings. */
+    Timer parseTimer() {
+        return _parse;
+    }
+
+    /** Return the timer for running characters through machines. */
+    Timer convertTimer() {
+        return _convert;
+    }
+
+    /** Return the timer for grouping and writing output. */
+    Timer formatTimer() {
+        return _format;
+    }
+
+    @Override
+    public long getCharacters() {
+        return _characters.sum();
+    }
+
+    @Override
+    public long getMessages() {
+        return _messages.sum();
+    }
+
+    @Override
+    public long getRotorSteps() {
+        return _rotorSteps.sum();
+    }
+
+    @Override
+    public long getNotchCarries() {
+        return _notchCarries.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return _bytesRead.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return _bytesWritten.sum();
+    }
+
+    @Override
+    public long getParseNanos() {
+        return _parse.nanos();
+    }
+
+    @Override
+    public long getConvertNanos() {
+        return _convert.nanos();
+    }
+
+    @Override
+    public long getFormatNanos() {
+        return _format.nanos();
+    }
+
+    /** Return a one-line summary of my counters and timers. */
+    String report() {
+        return String.format("%d characters, %d messages, %d rotor steps, "
+                             + "%d notch carries, %d bytes read, "
+                             + "%d bytes written; parse %.3f ms, "
+                             + "convert %.3f ms, format %.3f ms",
+                             getCharacters(), getMessages(),
+                             getRotorSteps(), getNotchCarries(),
+                             getBytesRead(), getBytesWritten(),
+                             millis(getParseNanos()),
+                             millis(getConvertNanos()),
+                             millis(getFormatNanos()));
+    }
+
+    /** Return NANOS in milliseconds. */
+    private static double millis(long nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+
+    /** Publish me over JMX on the platform MBean server, until I am
+     *  closed. */
+    void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            server.registerMBean(this, name);
+            _name = name;
+        } catch (JMException excp) {
+            throw error("could not register metrics: %s", excp.getMessage());
+        }
+    }
+
+    /** Print my report to OUT every SECONDS seconds, until I am
+     *  closed. */
+    void reportEvery(long seconds, PrintStream out) {
+        _reporter = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "enigma-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        _reporter.scheduleAtFixedRate(() -> out.println(report()),
+                                      seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /** Stop reporting and withdraw me from JMX. */
+    @Override
+    public void close() {
+        if (_reporter != null) {
+            _reporter.shutdownNow();
+            _reporter = null;
+        }
+        if (_name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer()
+                    .unregisterMBean(_name);
+            } catch (JMException excp) {
+                throw error("could not unregister metrics: %s",
+                            excp.getMessage());
+            }
+            _name = null;
+        }
+    }
+
+    /** Return a stream reading from IN whose bytes are counted as
+     *  read. */
+    InputStream countInput(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = in.read();
+                if (b >= 0) {
+                    _bytesRead.increment();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buf, int off, int len)
+                throws IOException {
+                int n = in.read(buf, off, len);
+                if (n > 0) {
+                    _bytesRead.add(n);
+                }
+                return n;
+            }
+        };
+    }
+
+    /** Return a stream writing to OUT whose bytes are counted as
+     *  written. */
+    OutputStream countOutput(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                _bytesWritten.increment();
+            }
+
+            @Override
+            public void write(byte[] buf, int off, int len)
+                throws IOException {
+                out.write(buf, off, len);
+                _bytesWritten.add(len);
+            }
+        };
+    }
+
+    /** Return a channel writing to OUT whose bytes are counted as
+     *  written. */
+    WritableByteChannel countOutput(WritableByteChannel out) {
+        return new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                int n = out.write(src);
+                _bytesWritten.add(n);
+                return n;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return out.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.close();
+            }
+        };
+    }
+
+    /** Name under which I am published over JMX. */
+    static final String OBJECT_NAME = "enigma:type=Metrics";
+
+    /** One in how many conversions and output operations is timed;
+     *  each happens about once per message line. */
+    private static final int SAMPLE_INTERVAL = 16;
+
+    /** Nanoseconds in a millisecond. */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /** Counters. */
+    private final LongAdder _characters = new LongAdder(),
+        _messages = new LongAdder(), _rotorSteps = new LongAdder(),
+        _notchCarries = new LongAdder(), _bytesRead = new LongAdder(),
+        _bytesWritten = new LongAdder();
+
+    /** Timers.  Parsing happens once per settings line, and so is always
+     *  timed. */
+    private final Timer _parse = new Timer(1),
+        _convert = new Timer(SAMPLE_INTERVAL),
+        _format = new Timer(SAMPLE_INTERVAL);
+
+    /** Name under which I am registered, or null if I am not. */
+    private ObjectName _name;
+
+    /** Runs periodic reports, or null if there are none. */
+    private ScheduledExecutorService _reporter;
+}
@@ -0,0 +1,36 @@
+package enigma;
+
+/** The management interface through which a Metrics is published over
+ *  JMX.  Times are in nanoseconds, and are estimates (see Metrics).
+ *  @author Bryan Lim
+ */
+public interface MetricsMXBean {
+
+    /** Return the number of message characters converted. */
+    long getCharacters();
+
+    /** Return the number of settings lines processed. */
+    long getMessages();
+
+    /** Return the number of single-position rotor advances. */
+    long getRotorSteps();
+
+    /** Return the number of carries from a rotor at a notch into its
+     *  left neighbor. */
+    long getNotchCarries();
+
+    /** Return the number of bytes of input read. */
+    long getBytesRead();
+
+    /** Return the number of bytes of output written. */
+    long getBytesWritten();
+
+    /** Return the time spent parsing configurations and settings. */
+    long getParseNanos();
+
+    /** Return the time spent running characters through machines. */
+    long getConvertNanos();
+
+    /** Return the time spent grouping and writing output. */
+    long getFormatNanos();
+}
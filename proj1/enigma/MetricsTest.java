@@ -0,0 +1,162 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ForkJoinPool;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Metrics class.
+ *  @author Bryan Lim
+ */
+public class MetricsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** A configuration with the naval rotors I-V, Beta, and B. */
+    private static final String CONFIG =
+        UPPER_STRING + " 5 3\n"
+        + "I MQ " + NAVALA.get("I") + "\n"
+        + "II ME " + NAVALA.get("II") + "\n"
+        + "III MV " + NAVALA.get("III") + "\n"
+        + "IV MJ " + NAVALA.get("IV") + "\n"
+        + "V MZ " + NAVALA.get("V") + "\n"
+        + "Beta N " + NAVALA.get("Beta") + "\n"
+        + "B R " + NAVALA.get("B") + "\n";
+
+    /** Input with two messages, under different keys. */
+    private static final String INPUT =
+        "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+        + "FROM his shoulder Hiawatha\n"
+        + "Took the camera of rosewood\n"
+        + "* B BETA II V I AADQ\n"
+        + "Made of sliding folding rosewood\n";
+
+    /** Number of letters in the messages of INPUT. */
+    private static final int LETTERS = 23 + 23 + 28;
+
+    /** Return METRICS after running INPUT through PROCESSOR, which
+     *  records in it. */
+    private Metrics run(InputProcessor processor, Metrics metrics)
+        throws IOException {
+        processor.setMetrics(metrics);
+        processor.process(INPUT.toCharArray(), 0, INPUT.length());
+        processor.finish();
+        return metrics;
+    }
+
+    @Test
+    public void countsMessages() throws IOException {
+        StringWriter output = new StringWriter();
+        Machine machine = Main.parseConfig(CONFIG);
+        Metrics metrics =
+            run(new MessageProcessor(machine, UPPER, output), new Metrics());
+        assertEquals(LETTERS, metrics.getCharacters());
+        assertEquals(2, metrics.getMessages());
+        assertEquals(machine.rotorSteps(), metrics.getRotorSteps());
+        assertEquals(machine.carries(), metrics.getNotchCarries());
+        assertTrue("no carries", metrics.getNotchCarries() > 0);
+        assertTrue("no parse time", metrics.getParseNanos() > 0);
+
+        StringWriter unmeasured = new StringWriter();
+        MessageProcessor plain =
+            new MessageProcessor(Main.parseConfig(CONFIG), UPPER, unmeasured);
+        plain.process(INPUT.toCharArray(), 0, INPUT.length());
+        plain.finish();
+        assertEquals(unmeasured.toString(), output.toString());
+    }
+
+    @Test
+    public void parallelMatchesSerial() throws IOException {
+        Metrics serial =
+            run(new MessageProcessor(Main.parseConfig(CONFIG), UPPER,
+                                     new StringWriter()),
+                new Metrics());
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            Metrics parallel =
+                run(new ParallelMessageProcessor(Main.parseConfig(CONFIG),
+                                                 UPPER, new StringWriter(),
+                                                 pool),
+                    new Metrics());
+            assertEquals(serial.getCharacters(), parallel.getCharacters());
+            assertEquals(serial.getMessages(), parallel.getMessages());
+            assertEquals(serial.getRotorSteps(), parallel.getRotorSteps());
+            assertEquals(serial.getNotchCarries(),
+                         parallel.getNotchCarries());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void countsBytes() throws IOException {
+        Metrics metrics = new Metrics();
+        InputStream in =
+            metrics.countInput(new ByteArrayInputStream(new byte[100]));
+        in.read();
+        in.read(new byte[50]);
+        in.read(new byte[100]);
+        assertEquals(-1, in.read());
+        assertEquals(100, metrics.getBytesRead());
+
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        OutputStream out = metrics.countOutput(sink);
+        out.write(1);
+        out.write(new byte[30], 5, 20);
+        WritableByteChannel channel =
+            metrics.countOutput(Channels.newChannel(sink));
+        channel.write(ByteBuffer.wrap(new byte[9]));
+        assertEquals(30, sink.size());
+        assertEquals(30, metrics.getBytesWritten());
+    }
+
+    @Test
+    public void sampledTimersScale() {
+        Metrics.Timer timer = new Metrics.Timer(4);
+        int sampled = 0;
+        for (int i = 0; i < 1000; i += 1) {
+            long start = timer.start();
+            if (start != 0) {
+                sampled += 1;
+            }
+            timer.stop(start);
+        }
+        assertTrue("wrong sampling rate", sampled > 150 && sampled < 350);
+        assertEquals(0, timer.nanos() % 4);
+    }
+
+    @Test
+    public void publishedOverJmx() throws IOException, JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+        Metrics metrics = new Metrics();
+        metrics.register();
+        try {
+            metrics.characters(42);
+            assertEquals(42L, server.getAttribute(name, "Characters"));
+        } finally {
+            metrics.close();
+        }
+        assertFalse(server.isRegistered(name));
+    }
+
+}
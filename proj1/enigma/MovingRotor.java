@@ -15,6 +15,13 @@ class MovingRotor extends Rotor {
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
         _notches = notches;
+        _notchAt = new boolean[perm.size()];
+        for (int i = 0; i < notches.length(); i++) {
+            char c = notches.charAt(i);
+            if (perm.alphabet().contains(c)) {
+                _notchAt[perm.alphabet().toInt(c)] = true;
+            }
+        }
     }
 
     @Override
@@ -28,15 +35,18 @@ class MovingRotor extends Rotor {
     }
 
     @Override
-    boolean atNotch() {
-        for (int i = 0; i < _notches.length(); i++) {
-            if (alphabet().toChar(_setting) == _notches.charAt(i)) {
-                return true;
-            }
-        }
-        return false;
+    boolean atNotch(int posn) {
+        return _notchAt[posn];
+    }
+
+    @Override
+    String notches() {
+        return _notches;
     }
 
     /** Represents the notch values at which a rotor will move adjacent. */
     private String _notches;
+
+    /** True at each setting at which I am at a notch. */
+    private final boolean[] _notchAt;
 }
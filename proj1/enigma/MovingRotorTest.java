@@ -6,6 +6,7 @@ import org.junit.rules.Timeout;
 import static org.junit.Assert.*;
 
 import java.util.HashMap;
+import java.util.Random;
 
 import static enigma.TestUtils.*;
 
@@ -64,6 +65,52 @@ public class MovingRotorTest {
         checkRotor("Rotor I advanced", UPPER_STRING, NAVALB_MAP.get("I"));
     }
 
+    @Test
+    public void checkNotches() {
+        setRotor("VI", NAVALA, "ZM");
+        for (int i = 0; i < 26; i += 1) {
+            rotor.set(i);
+            assertEquals(msg("notches", "setting %d", i),
+                         i == 12 || i == 25, rotor.atNotch());
+        }
+    }
+
+    @Test
+    public void checkRingSetting() {
+        setRotor("I", NAVALA, "Q");
+        rotor.set(3);
+        rotor.setRing(2);
+        checkRotor("Rotor I (D, ring C)", UPPER_STRING, NAVALB_MAP.get("I"));
+        rotor.set(16);
+        rotor.setRing(25);
+        assertTrue("notch follows the setting, not the ring",
+                   rotor.atNotch());
+    }
+
+    @Test
+    public void checkLargeAlphabet() {
+        int size = Rotor.MAX_TABLE_SIZE + 1;
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < size; i += 1) {
+            chars.append((char) ('\u0100' + i));
+        }
+        Permutation perm =
+            new Permutation(shuffle(size, new Random(size)),
+                            new Alphabet(chars.toString()));
+        rotor = new MovingRotor("L", perm, "");
+        assertNull(rotor.forwardTables(0));
+        assertNull(rotor.backwardTables(3));
+        rotor.set(40);
+        rotor.setRing(7);
+        for (int c = 0; c < size; c += 1) {
+            int e = perm.wrap(perm.permute(perm.wrap(c + 33)) - 33);
+            assertEquals(msg("Large rotor", "translation of %d", c),
+                         e, rotor.convertForward(c));
+            assertEquals(msg("Large rotor", "inverse of %d", e),
+                         c, rotor.convertBackward(e));
+        }
+    }
+
     @Test
     public void checkRotorSet() {
         setRotor("I", NAVALA, "");
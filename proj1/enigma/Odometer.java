@@ -0,0 +1,275 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** Computes the settings of a machine's rotors after any number of key
+ *  presses without simulating the presses one at a time.
+ *
+ *  On each key press, Machine.convert visits the rotors from right to
+ *  left.  A rotor that is at a notch when visited advances its left
+ *  neighbor and (unless it is the rightmost rotor) itself; afterwards the
+ *  rightmost rotor advances.  Viewed from any one rotor, then, a press
+ *  does nothing unless either its right neighbor carried into it (a
+ *  "pulse") or it is sitting on one of its notches; in either case it
+ *  may carry into its left neighbor.
+ *
+ *  The pulses leaving the rightmost rotor repeat with a period of its
+ *  alphabet size.  Given a periodic train of incoming pulses, the pulses
+ *  leaving the next rotor are also (eventually) periodic: its setting at
+ *  the start of each input period can take only size() values, so it must
+ *  cycle within size() + 1 periods.  Working leftward, each rotor is
+ *  simulated only at the presses on which it can move, and only until
+ *  its cycle is found, which makes the cost independent of the number of
+ *  presses skipped.
+ *
+ *  An Odometer keeps its trains and scratch arrays from one advance to
+ *  the next, growing them as needed, so that once they have reached the
+ *  size a machine needs, advancing its rotors allocates nothing.  An
+ *  Odometer is therefore to be used by one thread at a time.
+ *  @author Bryan Lim
+ */
+final class Odometer {
+
+    /** Set SETTINGS, the settings of the rotors ROTORS of a machine
+     *  (ROTORS[0] being its reflector), to those they would have after
+     *  PRESSES key presses. */
+    void advance(Rotor[] rotors, int[] settings, long presses) {
+        if (presses < 0) {
+            throw error("cannot advance a negative number of presses");
+        }
+        int last = rotors.length - 1;
+        Train pulses = rightmost(rotors[last], settings, last, presses,
+                                 _trains[0]);
+        for (int i = last - 1; i >= 0; i -= 1) {
+            Rotor rotor = rotors[i];
+            Train out = pulses == _trains[0] ? _trains[1] : _trains[0];
+            out.clear();
+            if (rotor.rotates()) {
+                _stepper.reset(rotor, settings, i, i > 0);
+                _stepper.run(pulses, out, presses);
+            }
+            pulses = out;
+        }
+    }
+
+    /** Set RESULT to the pulses that RIGHTMOST, the rightmost rotor of a
+     *  machine, whose setting is SETTINGS[SLOT], sends to its left
+     *  neighbor, advance it by PRESSES, and return RESULT. */
+    private static Train rightmost(Rotor rightmost, int[] settings, int slot,
+                                   long presses, Train result) {
+        result.clear();
+        if (!rightmost.rotates()) {
+            return result;
+        }
+        int size = rightmost.size();
+        int start = settings[slot];
+        result.start = 0;
+        result.period = size;
+        for (int k = 0; k < size; k += 1) {
+            if (rightmost.atNotch((start + k) % size)) {
+                result.add(k);
+            }
+        }
+        settings[slot] = (int) ((start + presses % size) % size);
+        return result;
+    }
+
+    /** A train of key presses on which a rotor receives a carry from
+     *  its right neighbor.  The first prefix() times are the pulses before
+     *  start; if period is positive, the remaining times lie in
+     *  [start, start + period) and repeat every period presses
+     *  thereafter.  If period is 0, all the pulses are listed. */
+    private static class Train {
+
+        /** Remove all my pulses. */
+        void clear() {
+            count = 0;
+            start = 0;
+            period = 0;
+            prefixCount = 0;
+        }
+
+        /** Add a pulse at T, which must follow all current pulses. */
+        void add(long t) {
+            if (count == times.length) {
+                times = Arrays.copyOf(times, 2 * count);
+            }
+            times[count] = t;
+            count += 1;
+        }
+
+        /** Return the number of pulses before start. */
+        int prefix() {
+            return period == 0 ? count : prefixCount;
+        }
+
+        /** Pulse times. */
+        long[] times = new long[INITIAL_CAPACITY];
+        /** Number of valid entries in times. */
+        int count;
+        /** Time at which the periodic part of the train begins. */
+        long start;
+        /** Period of the train, or 0 if it does not repeat. */
+        long period;
+        /** Number of pulses before start, when period > 0. */
+        int prefixCount;
+    }
+
+    /** Simulates a single non-rightmost rotor over an incoming train. */
+    private static class Stepper {
+
+        /** Simulate ROTOR from now on, whose setting is SETTINGS[SLOT]
+         *  and whose notches count iff CHECKNOTCH (the leftmost slot is
+         *  never checked for a notch). */
+        void reset(Rotor rotor, int[] settings, int slot,
+                   boolean checkNotch) {
+            _rotor = rotor;
+            _size = rotor.size();
+            _checkNotch = checkNotch;
+            _settings = settings;
+            _slot = slot;
+            _setting = settings[slot];
+            if (_seen.length < _size + 1) {
+                _seen = new int[_size + 1];
+                _states = new int[_size + 1];
+                _outMark = new int[_size + 1];
+            }
+        }
+
+        /** Advance my rotor by the effect of PRESSES key presses on
+         *  which it receives pulses IN, and set OUT, which is empty, to
+         *  the pulses it sends its left neighbor. */
+        void run(Train in, Train out, long presses) {
+            long prefixEnd = in.period == 0 ? presses
+                : Math.min(in.start, presses);
+            _next = 0;
+            simulate(in.times, 0, in.prefix(), 0, 0, prefixEnd, out);
+            if (in.period == 0 || in.start >= presses) {
+                finish(out);
+                return;
+            }
+            Arrays.fill(_seen, 0, _size, -1);
+            int p = in.prefix(), n = in.count;
+            for (int k = 0;; k += 1) {
+                long wstart = in.start + k * in.period;
+                if (wstart >= presses) {
+                    finish(out);
+                    return;
+                }
+                if (_seen[_setting] >= 0) {
+                    cycle(in, out, _seen[_setting], k, presses);
+                    return;
+                }
+                _seen[_setting] = k;
+                _states[k] = _setting;
+                _outMark[k] = out.count;
+                long wend = Math.min(wstart + in.period, presses);
+                _next = wstart;
+                simulate(in.times, p, n, wstart - in.start, wstart, wend,
+                         out);
+                if (wend == presses) {
+                    finish(out);
+                    return;
+                }
+            }
+        }
+
+        /** Having found that the rotor's setting at the start of input
+         *  period K repeats that at period K0 (within the input train
+         *  IN), complete OUT as a periodic train, and set the rotor to its
+         *  setting after PRESSES presses.  _states and _outMark record
+         *  the setting and OUT's length at the start of each period. */
+        private void cycle(Train in, Train out, int k0, int k,
+                           long presses) {
+            long start = in.start + k0 * in.period;
+            long period = (k - k0) * in.period;
+            out.prefixCount = _outMark[k0];
+            out.start = start;
+            out.period = period;
+            long into = (presses - start) % period;
+            int q = (int) (into / in.period);
+            long wstart = presses - into + q * in.period;
+            _setting = _states[k0 + q];
+            _next = wstart;
+            _discarded.clear();
+            simulate(in.times, in.prefix(), in.count, wstart - in.start,
+                     wstart, presses, _discarded);
+            _settings[_slot] = _setting;
+        }
+
+        /** Set my rotor to its final setting and end OUT. */
+        private void finish(Train out) {
+            _settings[_slot] = _setting;
+            out.period = 0;
+        }
+
+        /** Simulate the presses in [FROM, TO) on which pulses arrive
+         *  at TIMES[LO .. HI-1] + SHIFT (or on which my rotor sits at a
+         *  notch), recording outgoing pulses in OUT.  _next is the first
+         *  press not yet simulated. */
+        private void simulate(long[] times, int lo, int hi, long shift,
+                              long from, long to, Train out) {
+            int j = lo;
+            while (j < hi && times[j] + shift < from) {
+                j += 1;
+            }
+            while (true) {
+                long pulse = j < hi ? times[j] + shift : Long.MAX_VALUE;
+                long t = notched() ? _next : pulse;
+                if (t >= to) {
+                    return;
+                }
+                if (t == pulse) {
+                    _setting = (_setting + 1) % _size;
+                    j += 1;
+                }
+                if (notched()) {
+                    out.add(t);
+                    _setting = (_setting + 1) % _size;
+                }
+                _next = t + 1;
+            }
+        }
+
+        /** Return true iff my rotor would carry at its current setting. */
+        private boolean notched() {
+            return _checkNotch && _rotor.atNotch(_setting);
+        }
+
+        /** The rotor being simulated. */
+        private Rotor _rotor;
+        /** Size of its alphabet. */
+        private int _size;
+        /** The settings of all the machine's slots. */
+        private int[] _settings;
+        /** The slot of the rotor being simulated. */
+        private int _slot;
+        /** True iff its notches are checked. */
+        private boolean _checkNotch;
+        /** Its simulated setting. */
+        private int _setting;
+        /** First press not yet simulated. */
+        private long _next;
+        /** The input period at which each setting was first seen at the
+         *  start of a period, or -1. */
+        private int[] _seen = new int[0];
+        /** The setting at the start of each input period. */
+        private int[] _states = new int[0];
+        /** The number of output pulses at the start of each period. */
+        private int[] _outMark = new int[0];
+        /** Receives pulses that are not needed. */
+        private final Train _discarded = new Train();
+    }
+
+    /** Initial capacity of a Train. */
+    private static final int INITIAL_CAPACITY = 8;
+
+    /** The trains of pulses into and out of the rotor being simulated,
+     *  used alternately. */
+    private final Train[] _trains = { new Train(), new Train() };
+
+    /** Simulates each rotor in turn. */
+    private final Stepper _stepper = new Stepper();
+}
@@ -0,0 +1,168 @@
+package enigma;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static enigma.EnigmaException.*;
+
+/** An InputProcessor that splits its input at settings lines and
+ *  converts the resulting messages concurrently, each with its own
+ *  MessageProcessor and copy of the machine.  Since every settings line
+ *  completely resets the machine, the messages are independent; their
+ *  results are written out in their original order.
+ *  @author Bryan Lim
+ */
+class ParallelMessageProcessor implements InputProcessor {
+
+    /** A processor that runs messages through copies of MACHINE, whose
+     *  alphabet is ALPHABET, on POOL, and writes the results to OUTPUT. */
+    ParallelMessageProcessor(Machine machine, Alphabet alphabet,
+                             Writer output, ForkJoinPool pool) {
+        this(machine, alphabet, output, pool, GroupFormatter.GROUP_SIZE, 0);
+    }
+
+    /** A processor that runs messages through copies of MACHINE, whose
+     *  alphabet is ALPHABET, on POOL, and writes the results to OUTPUT
+     *  in groups of GROUPSIZE letters on lines of at most LINEWIDTH
+     *  characters (any length if LINEWIDTH is 0). */
+    ParallelMessageProcessor(Machine machine, Alphabet alphabet,
+                             Writer output, ForkJoinPool pool,
+                             int groupSize, int lineWidth) {
+        _prototype = machine;
+        _alphabet = alphabet;
+        _output = output;
+        _pool = pool;
+        _groupSize = groupSize;
+        _lineWidth = lineWidth;
+        _maxPending = MAX_PENDING_PER_THREAD * pool.getParallelism();
+    }
+
+    @Override
+    public void process(char[] buf, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            char c = buf[i];
+            if (c == '*' && _atLineStart) {
+                if (_chunk.length() > 0) {
+                    submit();
+                }
+                _configured = true;
+            }
+            _chunk.append(c);
+            if (c == '\n') {
+                _atLineStart = true;
+            } else if (!Character.isWhitespace(c)) {
+                _atLineStart = false;
+            }
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (_chunk.length() > 0) {
+            submit();
+        }
+        while (!_pending.isEmpty()) {
+            writeNext();
+        }
+    }
+
+    @Override
+    public boolean configured() {
+        return _configured;
+    }
+
+    @Override
+    public void setMetrics(Metrics metrics) {
+        _metrics = metrics;
+    }
+
+    /** Start converting the text accumulated in _chunk, first writing out
+     *  finished results if too many conversions are outstanding. */
+    private void submit() throws IOException {
+        char[] text = new char[_chunk.length()];
+        _chunk.getChars(0, text.length, text, 0);
+        _chunk.setLength(0);
+        Machine machine = _prototype.copy();
+        _pending.add(_pool.submit(() -> convert(machine, text)));
+        while (_pending.size() > _maxPending) {
+            writeNext();
+        }
+    }
+
+    /** Wait for the oldest outstanding conversion and write its result. */
+    private void writeNext() throws IOException {
+        ForkJoinTask<CharArrayWriter> task = _pending.remove();
+        CharArrayWriter result;
+        try {
+            result = task.join();
+        } catch (EnigmaException excp) {
+            throw excp;
+        } catch (RuntimeException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw error("could not convert message: %s", excp);
+        }
+        result.writeTo(_output);
+    }
+
+    /** Return the conversion of TEXT, a settings line and the messages
+     *  that follow it, using MACHINE. */
+    private CharArrayWriter convert(Machine machine, char[] text)
+        throws IOException {
+        CharArrayWriter result = new CharArrayWriter(text.length);
+        MessageProcessor processor =
+            new MessageProcessor(machine,
+                                 GroupFormatter.of(result, _alphabet,
+                                                   _groupSize, _lineWidth));
+        processor.setMetrics(_metrics);
+        processor.process(text, 0, text.length);
+        processor.finish();
+        return result;
+    }
+
+    /** Maximum number of outstanding conversions per pool thread. */
+    private static final int MAX_PENDING_PER_THREAD = 4;
+
+    /** Machine copied to convert each message. */
+    private final Machine _prototype;
+
+    /** Alphabet of _prototype. */
+    private final Alphabet _alphabet;
+
+    /** Destination for converted messages. */
+    private final Writer _output;
+
+    /** Number of letters in each printed group. */
+    private final int _groupSize;
+
+    /** Maximum length of a printed line, or 0 if there is none. */
+    private final int _lineWidth;
+
+    /** Pool on which messages are converted. */
+    private final ForkJoinPool _pool;
+
+    /** Maximum number of outstanding conversions. */
+    private final int _maxPending;
+
+    /** Outstanding conversions, oldest first. */
+    private final ArrayDeque<ForkJoinTask<CharArrayWriter>> _pending =
+        new ArrayDeque<>();
+
+    /** Text of the message currently being read. */
+    private final StringBuilder _chunk = new StringBuilder();
+
+    /** True iff only whitespace has been read on the current line. */
+    private boolean _atLineStart = true;
+
+    /** True once some settings line has been read. */
+    private boolean _configured;
+
+    /** Where the work of each message is recorded, or null if it is
+     *  not. */
+    private Metrics _metrics;
+}
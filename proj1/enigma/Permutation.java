@@ -15,47 +15,84 @@ class Permutation {
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
         _cycles = cycles;
-        numArrays = 0;
-        for (int i = 0; i < cycles.length(); i++) {
-            if (cycles.charAt(i) == '(') {
-                numArrays++;
-            }
+        _forward = new int[alphabet.size()];
+        _inverse = new int[alphabet.size()];
+        boolean[] mapped = new boolean[alphabet.size()];
+        for (int i = 0; i < _forward.length; i++) {
+            _forward[i] = _inverse[i] = i;
         }
-        if (numArrays > 0) {
-            _cycleArray = new String[numArrays];
-            temp = Character.toString(cycles.charAt(1));
-            int x = 0;
-            for (int j = 2; j < cycles.length(); j++) {
-                if (cycles.charAt(j) == ')' && (j == cycles.length() - 1
-                    || j == cycles.length() - 2)) {
-                    _cycleArray[x] = temp;
-                    x++;
-                } else if (cycles.charAt(j) == ')') {
-                    _cycleArray[x] = temp;
-                    temp = Character.toString(cycles.charAt(j + 3));
-                    x++;
-                } else if (cycles.charAt(j) == ' ') {
-                    j += 2;
-                    continue;
-                } else {
-                    temp += cycles.charAt(j);
+        boolean derangement = true;
+        int start = -1;
+        for (int i = 0; i < cycles.length(); i++) {
+            char c = cycles.charAt(i);
+            if (c == '(') {
+                if (start >= 0) {
+                    throw error("nested cycle in %s", cycles);
                 }
+                start = i + 1;
+            } else if (c == ')') {
+                if (start < 0) {
+                    throw error("unbalanced cycle in %s", cycles);
+                }
+                String cycle = cycles.substring(start, i).replaceAll("\\s", "");
+                if (cycle.length() == 1) {
+                    derangement = false;
+                }
+                addCycle(cycle, mapped);
+                start = -1;
+            } else if (start < 0 && !Character.isWhitespace(c)) {
+                throw error("character outside of cycle in %s", cycles);
             }
-        } else {
-            _cycleArray = new String[0];
         }
+        if (start >= 0) {
+            throw error("unterminated cycle in %s", cycles);
+        }
+        _derangement = derangement;
     }
 
+    /** Set this Permutation to the one mapping each index I of ALPHABET
+     *  to FORWARD[I].  Every index counts as written in some cycle, so
+     *  derangement() is the same as fixedPointFree(). */
+    Permutation(int[] forward, Alphabet alphabet) {
+        this(forward, alphabet, fixedPointFree(forward));
+    }
+
+    /** Set this Permutation to the one mapping each index I of ALPHABET
+     *  to FORWARD[I], whose derangement() is DERANGEMENT. */
+    Permutation(int[] forward, Alphabet alphabet, boolean derangement) {
+        _alphabet = alphabet;
+        _cycles = null;
+        _derangement = derangement;
+        if (forward.length != alphabet.size()) {
+            throw error("permutation table has the wrong size");
+        }
+        _forward = forward.clone();
+        _inverse = new int[forward.length];
+        boolean[] mapped = new boolean[forward.length];
+        for (int i = 0; i < forward.length; i++) {
+            int to = forward[i];
+            if (to < 0 || to >= forward.length || mapped[to]) {
+                throw error("permutation table is not a permutation");
+            }
+            mapped[to] = true;
+            _inverse[to] = i;
+        }
+    }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm. */
-    private void addCycle(String cycle) {
-        tempArray = new String[numArrays + 1];
-        for (int i = 0; i < numArrays; i++) {
-            tempArray[i] = _cycleArray[i];
+     *  c0c1...cm, marking the indices it places in MAPPED. */
+    private void addCycle(String cycle, boolean[] mapped) {
+        for (int i = 0; i < cycle.length(); i++) {
+            int from = _alphabet.toInt(cycle.charAt(i));
+            int to = _alphabet.toInt(cycle.charAt((i + 1) % cycle.length()));
+            if (mapped[from]) {
+                throw error("character %c appears twice in %s",
+                            cycle.charAt(i), _cycles);
+            }
+            mapped[from] = true;
+            _forward[from] = to;
+            _inverse[to] = from;
         }
-        tempArray[temp.length() - 1] = cycle;
-        _cycleArray = tempArray;
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -69,45 +106,25 @@ class Permutation {
 
     /** Returns the size of the alphabet I permute. */
     int size() {
-        return _alphabet.size();
+        return _forward.length;
     }
 
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        p = wrap(p);
-        char myChar = _alphabet.toChar(p);
-        for (int i = 0; i < numArrays; i++) {
-            if (_cycleArray[i].contains("" + myChar)) {
-                if (_cycleArray[i].indexOf(myChar)
-                    == _cycleArray[i].length() - 1) {
-                    return _alphabet.toInt(_cycleArray[i].charAt(0));
-                } else {
-                    return _alphabet.toInt(_cycleArray[i].
-                    charAt(_cycleArray[i].indexOf(myChar) + 1));
-                }
-            }
+        if (p < 0 || p >= _forward.length) {
+            p = wrap(p);
         }
-        return p;
+        return _forward[p];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        c = wrap(c);
-        char myChar = _alphabet.toChar(c);
-        for (int i = 0; i < numArrays; i++) {
-            if (_cycleArray[i].contains("" + myChar)) {
-                if (_cycleArray[i].indexOf(myChar) == 0) {
-                    return _alphabet.toInt(
-                    _cycleArray[i].charAt(_cycleArray[i].length() - 1));
-                } else {
-                    return _alphabet.toInt(_cycleArray[i].
-                    charAt(_cycleArray[i].indexOf(myChar) - 1));
-                }
-            }
+        if (c < 0 || c >= _inverse.length) {
+            c = wrap(c);
         }
-        return c;
+        return _inverse[c];
     }
 
     /** Return the result of applying this permutation to the index of P
@@ -131,10 +148,23 @@ class Permutation {
     }
 
     /** Return true iff this permutation is a derangement (i.e., a
-     *  permutation for which no value maps to itself). */
+     *  permutation for which no value maps to itself).  Only cycles
+     *  written with a single character count as fixed points; characters
+     *  left out of every cycle do not (see fixedPointFree). */
     boolean derangement() {
-        for (int i = 0; i < numArrays; i++) {
-            if (_cycleArray[i].length() == 1) {
+        return _derangement;
+    }
+
+    /** Return true iff no index maps to itself, whether or not it appears
+     *  in some cycle. */
+    boolean fixedPointFree() {
+        return fixedPointFree(_forward);
+    }
+
+    /** Return true iff no index I has FORWARD[I] == I. */
+    private static boolean fixedPointFree(int[] forward) {
+        for (int i = 0; i < forward.length; i++) {
+            if (forward[i] == i) {
                 return false;
             }
         }
@@ -144,18 +174,16 @@ class Permutation {
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
 
-    /** String array of cycles. */
-    private String [] _cycleArray;
-
-    /** Temp variable for storing strings. */
-    private String temp;
+    /** Image of each index under this permutation. */
+    private final int[] _forward;
 
-    /** Temp array for adding new cycles. */
-    private String [] tempArray;
+    /** Image of each index under the inverse of this permutation. */
+    private final int[] _inverse;
 
-    /** Number of arrays/groups of cycles. */
-    private int numArrays;
+    /** Value of derangement(). */
+    private final boolean _derangement;
 
-    /** Cycles in the form of "(ccc) (cc) ... ". */
+    /** Cycles in the form of "(ccc) (cc) ... ", or null if I was built
+     *  from a table. */
     private String _cycles;
 }
@@ -58,4 +58,35 @@ public class PermutationTest {
         checkPerm("first test", UPPER_STRING, "TSDHFIRKENLCPMJOVZABQUWGXY");
     }
 
+    @Test
+    public void checkWrapAround() {
+        perm = new Permutation("(ABC) (XYZ)", UPPER);
+        assertEquals(1, perm.permute(26));
+        assertEquals(24, perm.permute(-3));
+        assertEquals(24, perm.invert(-1));
+        assertEquals(2, perm.invert(26));
+    }
+
+    @Test
+    public void checkDerangement() {
+        assertTrue(new Permutation(NAVALA.get("B"), UPPER).derangement());
+        assertFalse(new Permutation(NAVALA.get("I"), UPPER).derangement());
+        assertTrue(new Permutation("(AB)", UPPER).derangement());
+        assertTrue(new Permutation("", UPPER).derangement());
+        assertFalse(new Permutation("(AB) (C)", UPPER).derangement());
+    }
+
+    @Test
+    public void checkFixedPointFree() {
+        assertTrue(new Permutation(NAVALA.get("B"), UPPER).fixedPointFree());
+        assertFalse(new Permutation(NAVALA.get("I"), UPPER).fixedPointFree());
+        assertFalse(new Permutation("(AB)", UPPER).fixedPointFree());
+        assertFalse(new Permutation("", UPPER).fixedPointFree());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkRepeatedCharacter() {
+        perm = new Permutation("(ABC) (CD)", UPPER);
+    }
+
 }
@@ -20,6 +20,13 @@ class Reflector extends FixedRotor {
         }
     }
 
+    @Override
+    void setRing(int ring) {
+        if (ring != 0) {
+            throw error("reflector has no ring setting");
+        }
+    }
+
     @Override
     boolean reflecting() {
         return true;
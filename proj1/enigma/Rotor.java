@@ -2,7 +2,21 @@ package enigma;
 
 import static enigma.EnigmaException.*;
 
-/** Superclass that represents a rotor in the enigma machine.
+/** Superclass that represents a rotor in the enigma machine.  A rotor
+ *  has a setting and ring setting of its own for use on its own, but a
+ *  Machine keeps those of its slots itself and uses only the conversion
+ *  tables, so that machines may share rotors.
+ *
+ *  The ring setting (Ringstellung) turns the wiring relative to the
+ *  lettered ring that shows the setting and carries the notches: a
+ *  rotor at setting S with ring setting R converts as it would at
+ *  setting S - R with ring setting 0, but carries as it would at S.
+ *  For alphabets of at most MAX_TABLE_SIZE characters, conversion at
+ *  each of the size() offsets is precomputed in a table, so that
+ *  converting is a single lookup, with no adding, subtracting or
+ *  wrapping.  The tables take space proportional to the square of the
+ *  alphabet size, so larger alphabets convert by wrap arithmetic on the
+ *  permutation instead.
  *  @author Bryan Lim
  */
 class Rotor {
@@ -11,6 +25,19 @@ class Rotor {
     Rotor(String name, Permutation perm) {
         _name = name;
         _permutation = perm;
+        int n = perm.size();
+        if (n > MAX_TABLE_SIZE) {
+            _forward = _backward = null;
+            return;
+        }
+        _forward = new int[n][n];
+        _backward = new int[n][n];
+        for (int s = 0; s < n; s += 1) {
+            for (int p = 0; p < n; p += 1) {
+                _forward[s][p] = perm.wrap(perm.permute(perm.wrap(p + s)) - s);
+                _backward[s][p] = perm.wrap(perm.invert(perm.wrap(p + s)) - s);
+            }
+        }
     }
 
     /** Return my name. */
@@ -58,31 +85,94 @@ class Rotor {
         _setting = _permutation.alphabet().toInt(cposn);
     }
 
+    /** Return my current ring setting. */
+    int ring() {
+        return _ring;
+    }
+
+    /** Set ring() to RING. */
+    void setRing(int ring) {
+        _ring = ring;
+    }
+
+    /** Set ring() to character CRING. */
+    void setRing(char cring) {
+        setRing(_permutation.alphabet().toInt(cring));
+    }
+
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        p += _setting;
-        p = _permutation.wrap(p);
-        p = _permutation.permute(p);
-        p -= _setting;
-        p = _permutation.wrap(p);
-        return p;
+        return convertForward(p, _permutation.wrap(_setting - _ring));
+    }
+
+    /** Return the conversion of P (an integer in the range 0..size()-1)
+     *  according to my permutation, were my setting POSN and my ring
+     *  setting 0. */
+    int convertForward(int p, int posn) {
+        if (_forward == null) {
+            return _permutation.wrap(
+                _permutation.permute(_permutation.wrap(p + posn)) - posn);
+        }
+        return _forward[posn][p];
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        e += _setting;
-        e = _permutation.wrap(e);
-        e = _permutation.invert(e);
-        e -= _setting;
-        e = _permutation.wrap(e);
-        return e;
+        return convertBackward(e, _permutation.wrap(_setting - _ring));
+    }
+
+    /** Return the conversion of E (an integer in the range 0..size()-1)
+     *  according to the inverse of my permutation, were my setting
+     *  POSN and my ring setting 0. */
+    int convertBackward(int e, int posn) {
+        if (_backward == null) {
+            return _permutation.wrap(
+                _permutation.invert(_permutation.wrap(e + posn)) - posn);
+        }
+        return _backward[posn][e];
+    }
+
+    /** Return my forward conversions with ring setting RING: element
+     *  [S][P] of the result is the conversion of P at setting S.  The
+     *  result is shared and must not be modified.  Returns null if my
+     *  alphabet is too large to have tables. */
+    int[][] forwardTables(int ring) {
+        return rotate(_forward, ring);
+    }
+
+    /** Return my backward conversions with ring setting RING: element
+     *  [S][E] of the result is the conversion of E by my inverse at
+     *  setting S.  The result is shared and must not be modified.
+     *  Returns null if my alphabet is too large to have tables. */
+    int[][] backwardTables(int ring) {
+        return rotate(_backward, ring);
+    }
+
+    /** Return TABLES, a table for each offset, reindexed by the setting
+     *  that gives that offset with ring setting RING (null if TABLES is
+     *  null).  Only the outer array is new. */
+    private int[][] rotate(int[][] tables, int ring) {
+        if (ring == 0 || tables == null) {
+            return tables;
+        }
+        int[][] result = new int[tables.length][];
+        for (int s = 0; s < tables.length; s += 1) {
+            result[s] = tables[_permutation.wrap(s - ring)];
+        }
+        return result;
     }
 
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     boolean atNotch() {
+        return atNotch(_setting);
+    }
+
+    /** Returns true iff I would allow the rotor to my left to advance
+     *  were my setting POSN. */
+    boolean atNotch(int posn) {
         return false;
     }
 
@@ -90,6 +180,11 @@ class Rotor {
     void advance() {
     }
 
+    /** Return the characters at which I carry, in any order. */
+    String notches() {
+        return "";
+    }
+
     /** Returns the notch.*/
     String getNotch() {
         return _notch;
@@ -100,6 +195,9 @@ class Rotor {
         return "Rotor " + _name;
     }
 
+    /** Largest alphabet for which conversion tables are built. */
+    static final int MAX_TABLE_SIZE = 256;
+
     /** My name. */
     private final String _name;
 
@@ -109,6 +207,19 @@ class Rotor {
     /** Int value of the current setting of my rotor. */
     protected int _setting;
 
+    /** Int value of my current ring setting. */
+    protected int _ring;
+
+    /** Element [S][P] is the conversion of P by my permutation at
+     *  setting S and ring setting 0, or null if size() exceeds
+     *  MAX_TABLE_SIZE. */
+    private final int[][] _forward;
+
+    /** Element [S][E] is the conversion of E by the inverse of my
+     *  permutation at setting S and ring setting 0, or null if size()
+     *  exceeds MAX_TABLE_SIZE. */
+    private final int[][] _backward;
+
     /** Notch of the given rotor. */
     protected String _notch;
 
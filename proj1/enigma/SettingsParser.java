@@ -0,0 +1,116 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** Sets a machine according to settings lines.  Rotor choices and
+ *  plugboards that are the same as on the previous settings line are
+ *  reused rather than parsed again, so a parser should be kept for as
+ *  long as its machine is.
+ *  @author Bryan Lim
+ */
+class SettingsParser {
+
+    /** A parser that sets MACHINE. */
+    SettingsParser(Machine machine) {
+        _machine = machine;
+        _alphabet = machine.alphabet();
+        _rotorNames = new String[machine.numRotors()];
+    }
+
+    /** Set my machine according to SETTINGS, which must have the format
+     *  of a settings line without its leading '*', as specified in the
+     *  assignment, except that the setting may be followed by a ring
+     *  setting of the same form (all 0 if it is absent). */
+    void configure(String settings) {
+        Machine M = _machine;
+        int n = _rotorNames.length;
+        int start = skipBlanks(settings, 0);
+        int pos = start;
+        for (int i = 0; i < n; i++) {
+            pos = tokenEnd(settings, skipBlanks(settings, pos));
+        }
+        if (!sameRegion(settings, start, pos, _lastRotors)) {
+            pos = start;
+            for (int i = 0; i < n; i++) {
+                int begin = skipBlanks(settings, pos);
+                pos = tokenEnd(settings, begin);
+                _rotorNames[i] = settings.substring(begin, pos);
+            }
+            _lastRotors = null;
+            M.insertRotors(_rotorNames);
+            _lastRotors = settings.substring(start, pos);
+        }
+
+        int begin = skipBlanks(settings, pos);
+        pos = tokenEnd(settings, begin);
+        M.setRotors(settings.substring(begin, pos));
+
+        begin = skipBlanks(settings, pos);
+        if (begin < settings.length() && settings.charAt(begin) != '(') {
+            pos = tokenEnd(settings, begin);
+            M.setRings(settings.substring(begin, pos));
+        } else {
+            M.clearRings();
+        }
+
+        int plugStart = skipBlanks(settings, pos), plugEnd = plugStart;
+        for (pos = plugStart; pos < settings.length()
+                 && settings.charAt(pos) == '(';
+             pos = skipBlanks(settings, plugEnd)) {
+            plugEnd = tokenEnd(settings, pos);
+        }
+        if (!sameRegion(settings, plugStart, plugEnd, _lastCycles)) {
+            _lastPlugboard =
+                new Permutation(settings.substring(plugStart, plugEnd),
+                                _alphabet);
+            _lastCycles = settings.substring(plugStart, plugEnd);
+        }
+        M.setPlugboard(_lastPlugboard);
+    }
+
+    /** Return the index of the first non-whitespace character of S at or
+     *  after POS, or S.length() if there is none. */
+    private static int skipBlanks(String s, int pos) {
+        while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) {
+            pos += 1;
+        }
+        return pos;
+    }
+
+    /** Return the index just past the whitespace-delimited token of S
+     *  starting at POS, which must not be at the end of S. */
+    private static int tokenEnd(String s, int pos) {
+        if (pos == s.length()) {
+            throw error("bad settings line: %s", s);
+        }
+        while (pos < s.length() && !Character.isWhitespace(s.charAt(pos))) {
+            pos += 1;
+        }
+        return pos;
+    }
+
+    /** Return true iff the characters of S in [START, END) are TEXT. */
+    private static boolean sameRegion(String s, int start, int end,
+                                      String text) {
+        return text != null && text.length() == end - start
+            && s.regionMatches(start, text, 0, end - start);
+    }
+
+    /** The machine I set. */
+    private final Machine _machine;
+
+    /** Alphabet of _machine. */
+    private final Alphabet _alphabet;
+
+    /** Rotor names from the most recent settings line. */
+    private final String[] _rotorNames;
+
+    /** Text naming the rotors on the last successful settings line. */
+    private String _lastRotors;
+
+    /** Plugboard cycles on the most recent settings line. */
+    private String _lastCycles;
+
+    /** Plugboard described by _lastCycles. */
+    private Permutation _lastPlugboard;
+}
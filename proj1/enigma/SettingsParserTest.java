@@ -0,0 +1,73 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SettingsParser class.
+ *  @author Bryan Lim
+ */
+public class SettingsParserTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** A configuration with the naval rotors I-V, Beta, and B. */
+    private static final String CONFIG =
+        UPPER_STRING + " 5 3\n"
+        + "I MQ " + NAVALA.get("I") + "\n"
+        + "II ME " + NAVALA.get("II") + "\n"
+        + "III MV " + NAVALA.get("III") + "\n"
+        + "IV MJ " + NAVALA.get("IV") + "\n"
+        + "V MZ " + NAVALA.get("V") + "\n"
+        + "Beta N " + NAVALA.get("Beta") + "\n"
+        + "B R " + NAVALA.get("B") + "\n";
+
+    @Test
+    public void setsRotorsRingsAndPlugboard() {
+        Machine parsed = Main.parseConfig(CONFIG);
+        SettingsParser parser = new SettingsParser(parsed);
+        parser.configure("  B BETA III IV I\tAXLE BCDE (HQ) (EX)  ");
+        Machine expected = Main.parseConfig(CONFIG);
+        expected.insertRotors(new String[] {"B", "BETA", "III", "IV", "I"});
+        expected.setRotors("AXLE");
+        expected.setRings("BCDE");
+        expected.setPlugboard(new Permutation("(HQ) (EX)", UPPER));
+        String message = "FROMHISSHOULDERHIAWATHA";
+        assertEquals(expected.convert(message), parsed.convert(message));
+
+        parser.configure("B BETA III IV I AXLE (HQ) (EX)");
+        expected.setRotors("AXLE");
+        expected.clearRings();
+        assertEquals(expected.convert(message), parsed.convert(message));
+    }
+
+    @Test
+    public void recoversFromBadLines() {
+        Machine parsed = Main.parseConfig(CONFIG);
+        SettingsParser parser = new SettingsParser(parsed);
+        parser.configure("B BETA III IV I AXLE");
+        try {
+            parser.configure("B BETA III IV IX AXLE");
+            fail("bad rotor accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        try {
+            parser.configure("B BETA III IV");
+            fail("short settings line accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        parser.configure("B BETA III IV I AXLE");
+        Machine expected = Main.parseConfig(CONFIG);
+        new SettingsParser(expected).configure("B BETA III IV I AXLE");
+        String message = "FROMHISSHOULDERHIAWATHA";
+        assertEquals(expected.convert(message), parsed.convert(message));
+    }
+
+}
@@ -0,0 +1,152 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import static enigma.EnigmaException.*;
+
+/** Converts message text through a machine as it arrives, in chunks
+ *  whose boundaries may fall anywhere: inside a line or between any two
+ *  characters.  Each chunk's output is available as soon as the chunk
+ *  is processed.  Both the machine's rotor settings and the position
+ *  within the current output group carry over from one chunk to the
+ *  next, so that the output of a message is the same however it is
+ *  divided.
+ *
+ *  As for message lines in Main, letters are converted (a letter not in
+ *  the alphabet being taken as its upper-case form) and printed in
+ *  groups, other whitespace is dropped, and each newline ends the
+ *  current line of output and starts a new group.  The groups are printed
+ *  by a GroupFormatter writing into the caller's output array.
+ *  @author Bryan Lim
+ */
+class StreamingCipher {
+
+    /** A cipher converting through MACHINE that prints groups of
+     *  GROUPSIZE characters. */
+    StreamingCipher(Machine machine, int groupSize) {
+        _machine = machine;
+        _alphabet = machine.alphabet();
+        _output = new ArrayWriter();
+        _formatter = GroupFormatter.of(_output, _alphabet, groupSize, 0);
+    }
+
+    /** A cipher converting through MACHINE that prints groups of five
+     *  characters. */
+    StreamingCipher(Machine machine) {
+        this(machine, GroupFormatter.GROUP_SIZE);
+    }
+
+    /** Return the largest number of characters update can produce from
+     *  LEN characters of input. */
+    static int maxOutput(int len) {
+        return 2 * len;
+    }
+
+    /** Convert the LEN characters IN[OFF .. OFF+LEN-1], the next chunk of
+     *  input, storing the output in OUT starting at OUTOFF, which must
+     *  have room for maxOutput(LEN) characters.  Return the number of
+     *  characters stored. */
+    int update(char[] in, int off, int len, char[] out, int outOff) {
+        _output.target(out, outOff);
+        try {
+            convert(in, off, off + len);
+            _formatter.flush();
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+        return _output.position() - outOff;
+    }
+
+    /** Convert IN[START .. END-1], printing the results with
+     *  _formatter. */
+    private void convert(char[] in, int start, int end) throws IOException {
+        int i = start;
+        while (i < end) {
+            int n = 0;
+            for (; i < end && n < _pending.length; i += 1) {
+                char c = in[i];
+                if (c == '\n') {
+                    break;
+                } else if (!Character.isWhitespace(c)) {
+                    if (!_alphabet.contains(c)) {
+                        c = Character.toUpperCase(c);
+                    }
+                    _pending[n] = _alphabet.toInt(c);
+                    n += 1;
+                }
+            }
+            _machine.convert(_pending, 0, n);
+            _formatter.print(_pending, 0, n);
+            if (i < end && in[i] == '\n') {
+                _formatter.endLine();
+                i += 1;
+            }
+        }
+    }
+
+    /** Convert CHUNK, the next chunk of input, and return the output. */
+    String update(CharSequence chunk) {
+        char[] in = chunk.toString().toCharArray();
+        char[] out = new char[maxOutput(in.length)];
+        return new String(out, 0, update(in, 0, in.length, out, 0));
+    }
+
+    /** Return the number of characters printed so far in the current
+     *  group. */
+    int groupOffset() {
+        return _formatter.groupLength();
+    }
+
+    /** Number of characters converted by the machine at a time. */
+    private static final int BATCH_SIZE = 4096;
+
+    /** The machine text is converted through. */
+    private final Machine _machine;
+
+    /** Alphabet of _machine. */
+    private final Alphabet _alphabet;
+
+    /** Receives the output of _formatter. */
+    private final ArrayWriter _output;
+
+    /** Prints converted letters in groups to _output. */
+    private final GroupFormatter _formatter;
+
+    /** Indices of the letters being converted. */
+    private final int[] _pending = new int[BATCH_SIZE];
+
+    /** A Writer storing its output in an array given by its user. */
+    private static final class ArrayWriter extends Writer {
+
+        /** Store output in OUT from now on, starting at POS. */
+        void target(char[] out, int pos) {
+            _out = out;
+            _pos = pos;
+        }
+
+        /** Return the index just past the last character stored. */
+        int position() {
+            return _pos;
+        }
+
+        @Override
+        public void write(char[] buf, int off, int len) {
+            System.arraycopy(buf, off, _out, _pos, len);
+            _pos += len;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /** Array receiving output. */
+        private char[] _out;
+        /** Index in _out of the next character stored. */
+        private int _pos;
+    }
+}
@@ -0,0 +1,82 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the StreamingCipher class.
+ *  @author Bryan Lim
+ */
+public class StreamingCipherTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return a machine with the naval rotors B, Beta, III, IV and I
+     *  inserted, set to AXLE. */
+    private Machine machine() {
+        Collection<Rotor> rotors = new ArrayList<Rotor>();
+        String[] names = {"I", "III", "IV"};
+        String[] notches = {"Q", "V", "J"};
+        for (int i = 0; i < names.length; i++) {
+            rotors.add(new MovingRotor(names[i],
+                new Permutation(NAVALA.get(names[i]), UPPER), notches[i]));
+        }
+        rotors.add(new FixedRotor("Beta",
+                                  new Permutation(NAVALA.get("Beta"), UPPER)));
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"), UPPER)));
+        Machine result = new Machine(UPPER, 5, 3, rotors);
+        result.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        result.setRotors("AXLE");
+        result.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                            UPPER));
+        return result;
+    }
+
+    /** Input spanning several lines. */
+    private static final String TEXT =
+        "From his shoulder Hiawatha\n"
+        + "Took the camera of rosewood\n\n"
+        + "Made of sliding folding rosewood\n";
+
+    @Test
+    public void wholeInput() {
+        StreamingCipher cipher = new StreamingCipher(machine());
+        assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW\n"
+                     + "BHCNS CXNUO AATZX SRCFY DGU\n\n"
+                     + "FLPNX GXIXT YJUJR CAUGE UNCFM KUF\n",
+                     cipher.update(TEXT));
+        assertEquals(0, cipher.groupOffset());
+    }
+
+    @Test
+    public void anyChunking() {
+        String whole = new StreamingCipher(machine()).update(TEXT);
+        for (int size = 1; size < 12; size += 1) {
+            StreamingCipher cipher = new StreamingCipher(machine());
+            StringBuilder out = new StringBuilder();
+            for (int i = 0; i < TEXT.length(); i += size) {
+                out.append(cipher.update(
+                    TEXT.substring(i, Math.min(TEXT.length(), i + size))));
+            }
+            assertEquals(msg("chunks", "size %d", size),
+                         whole, out.toString());
+        }
+    }
+
+    @Test
+    public void groupSize() {
+        StreamingCipher cipher = new StreamingCipher(machine(), 3);
+        assertEquals("QVP QSO K", cipher.update("Fromhis"));
+        assertEquals(1, cipher.groupOffset());
+        assertEquals("OI", cipher.update("sh"));
+    }
+
+}
@@ -1,6 +1,9 @@
 package enigma;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Random;
 
 /** Utility definitions for use in unit tests.
  *  @author P. N. Hilfinger
@@ -18,6 +21,14 @@ class TestUtils {
         return testId + " (" + String.format(msgFormat, args) + ")";
     }
 
+    /** Return the number of bytes the current thread has allocated so
+     *  far. */
+    static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean)
+                ManagementFactory.getThreadMXBean())
+            .getCurrentThreadAllocatedBytes();
+    }
+
     /** The naval rotors in the A (0) setting. */
     static final HashMap<String, String> NAVALA = new HashMap<>();
     static {
@@ -126,4 +137,399 @@ class TestUtils {
         NAVALZ_MAP.put("Gamma", "EGTPLBOVFSINCUJZDXMRQAYWHK");
     }
 
+    /** Characters from which random alphabets are drawn: the printable
+     *  ASCII characters that may be in an alphabet. */
+    static final String ALPHABET_CHARS;
+    static {
+        StringBuilder chars = new StringBuilder();
+        for (char c = '!'; c <= '~'; c += 1) {
+            if ("*()".indexOf(c) < 0) {
+                chars.append(c);
+            }
+        }
+        ALPHABET_CHARS = chars.toString();
+    }
+
+    /** Number of characters in the alphabet of a byte machine. */
+    static final int BYTE_SYMBOLS = 256;
+
+    /** Return a random machine configuration chosen using RANDOM.  The
+     *  alphabet is drawn from ALPHABET_CHARS or, now and then, has
+     *  BYTE_SYMBOLS or LARGE_SYMBOLS characters.  There are 2 to
+     *  MAX_RANDOM_ROTORS slots and any number of pawls; the permutations,
+     *  reflectors, notches, plugboard and settings are all random, as are
+     *  the ring settings if there are any.  Notches are sometimes absent
+     *  and sometimes at every position. */
+    static RandomConfig randomConfig(Random random) {
+        String alphabet;
+        int kind = random.nextInt(BYTE_ODDS);
+        if (kind <= 1) {
+            int symbols = kind == 0 ? BYTE_SYMBOLS : LARGE_SYMBOLS;
+            StringBuilder chars = new StringBuilder();
+            for (int i = 0; i < symbols; i += 1) {
+                chars.append((char) (BYTE_BASE + i));
+            }
+            alphabet = shuffle(chars.toString(), random);
+        } else {
+            alphabet = shuffle(ALPHABET_CHARS, random)
+                .substring(0, 2 + random.nextInt(ALPHABET_CHARS.length() - 1));
+        }
+        int size = alphabet.length();
+        int numRotors = 2 + random.nextInt(MAX_RANDOM_ROTORS - 1);
+        int pawls = random.nextInt(numRotors);
+        String[] cycles = new String[numRotors];
+        String[] notches = new String[numRotors];
+        for (int i = 0; i < numRotors; i += 1) {
+            int[] map;
+            if (i == 0 && size % 2 == 0 && random.nextBoolean()) {
+                map = pairs(size, size / 2, random);
+            } else {
+                map = shuffle(size, random);
+            }
+            cycles[i] = cycles(map, alphabet, random);
+            if (i >= numRotors - pawls) {
+                double odds = NOTCH_ODDS[random.nextInt(NOTCH_ODDS.length)];
+                StringBuilder notched = new StringBuilder();
+                for (int c = 0; c < size; c += 1) {
+                    if (random.nextDouble() < odds) {
+                        notched.append(alphabet.charAt(c));
+                    }
+                }
+                notches[i] = notched.toString();
+            }
+        }
+        StringBuilder setting = new StringBuilder();
+        StringBuilder rings = new StringBuilder();
+        for (int i = 1; i < numRotors; i += 1) {
+            setting.append(alphabet.charAt(random.nextInt(size)));
+            rings.append(alphabet.charAt(random.nextInt(size)));
+        }
+        String plugboard = cycles(pairs(size, random.nextInt(size / 2 + 1),
+                                        random), alphabet, random);
+        return new RandomConfig(alphabet, pawls, cycles, notches,
+                                setting.toString(),
+                                random.nextBoolean() ? rings.toString()
+                                : null, plugboard);
+    }
+
+    /** Return the characters of CHARS in an order chosen using RANDOM. */
+    static String shuffle(String chars, Random random) {
+        char[] result = chars.toCharArray();
+        for (int i = result.length - 1; i > 0; i -= 1) {
+            int k = random.nextInt(i + 1);
+            char c = result[i];
+            result[i] = result[k];
+            result[k] = c;
+        }
+        return new String(result);
+    }
+
+    /** Return a permutation of 0 .. SIZE-1 chosen using RANDOM. */
+    static int[] shuffle(int size, Random random) {
+        int[] result = new int[size];
+        for (int i = 0; i < size; i += 1) {
+            int k = random.nextInt(i + 1);
+            result[i] = result[k];
+            result[k] = i;
+        }
+        return result;
+    }
+
+    /** Return a permutation of 0 .. SIZE-1 chosen using RANDOM that swaps
+     *  NUMPAIRS pairs and leaves everything else alone. */
+    static int[] pairs(int size, int numPairs, Random random) {
+        int[] order = shuffle(size, random);
+        int[] result = new int[size];
+        for (int i = 0; i < size; i += 1) {
+            result[i] = i;
+        }
+        for (int i = 0; i < numPairs; i += 1) {
+            result[order[2 * i]] = order[2 * i + 1];
+            result[order[2 * i + 1]] = order[2 * i];
+        }
+        return result;
+    }
+
+    /** Return MAP, a permutation of indices into ALPHABET, written as
+     *  cycles of the characters of ALPHABET.  The spacing between cycles,
+     *  and whether fixed points are written out, are chosen using
+     *  RANDOM. */
+    static String cycles(int[] map, String alphabet, Random random) {
+        StringBuilder result = new StringBuilder();
+        boolean[] written = new boolean[map.length];
+        for (int c = 0; c < map.length; c += 1) {
+            if (written[c] || map[c] == c && random.nextBoolean()) {
+                continue;
+            }
+            if (result.length() > 0 && random.nextBoolean()) {
+                result.append(' ');
+            }
+            result.append('(');
+            for (int e = c; !written[e]; e = map[e]) {
+                written[e] = true;
+                result.append(alphabet.charAt(e));
+            }
+            result.append(')');
+        }
+        return result.toString();
+    }
+
+    /** Return the permutation of indices into ALPHABET described by
+     *  CYCLES, found without using Permutation. */
+    static int[] cycleMap(String cycles, String alphabet) {
+        int[] result = new int[alphabet.length()];
+        for (int c = 0; c < result.length; c += 1) {
+            result[c] = c;
+        }
+        int start = -1;
+        for (int i = 0; i < cycles.length(); i += 1) {
+            char c = cycles.charAt(i);
+            if (c == '(') {
+                start = i + 1;
+            } else if (c == ')') {
+                for (int k = start; k < i; k += 1) {
+                    int next = k + 1 < i ? k + 1 : start;
+                    result[alphabet.indexOf(cycles.charAt(k))] =
+                        alphabet.indexOf(cycles.charAt(next));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** A machine configuration: its alphabet, rotors and settings. */
+    static final class RandomConfig {
+
+        /** A configuration whose alphabet consists of the characters
+         *  ALPHABET, with PAWLS pawls and a slot for each of CYCLES, where
+         *  CYCLES[i] gives the permutation of the rotor in slot I (slot 0
+         *  holding the reflector).  NOTCHES[i] gives the notches of that
+         *  rotor if it moves, and is null otherwise.  The rotors are set
+         *  to SETTING with ring settings RINGS (all 0 if null), and the
+         *  plugboard is PLUGBOARD. */
+        RandomConfig(String alphabet, int pawls, String[] cycles,
+                     String[] notches, String setting, String rings,
+                     String plugboard) {
+            this.alphabet = alphabet;
+            this.pawls = pawls;
+            this.cycles = cycles;
+            this.notches = notches;
+            this.setting = setting;
+            this.rings = rings;
+            this.plugboard = plugboard;
+        }
+
+        /** Return the number of slots. */
+        int numRotors() {
+            return cycles.length;
+        }
+
+        /** Return the name of the rotor in slot I. */
+        String name(int i) {
+            return "R" + i;
+        }
+
+        /** Return a new machine with this configuration, its rotors
+         *  inserted and set. */
+        Machine machine() {
+            Alphabet alpha = new Alphabet(alphabet);
+            ArrayList<Rotor> rotors = new ArrayList<Rotor>();
+            String[] names = new String[numRotors()];
+            for (int i = numRotors() - 1; i >= 0; i -= 1) {
+                names[i] = name(i);
+                Permutation perm = new Permutation(cycles[i], alpha);
+                if (i == 0) {
+                    rotors.add(new Reflector(names[i], perm));
+                } else if (notches[i] == null) {
+                    rotors.add(new FixedRotor(names[i], perm));
+                } else {
+                    rotors.add(new MovingRotor(names[i], perm, notches[i]));
+                }
+            }
+            Machine result = new Machine(alpha, numRotors(), pawls, rotors);
+            result.insertRotors(names);
+            result.setRotors(setting);
+            if (rings != null) {
+                result.setRings(rings);
+            }
+            result.setPlugboard(new Permutation(plugboard, alpha));
+            return result;
+        }
+
+        /** Return a new reference machine with this configuration. */
+        ReferenceMachine reference() {
+            return new ReferenceMachine(this);
+        }
+
+        /** Returns this configuration as a configuration file followed
+         *  by a settings line. */
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder(alphabet);
+            result.append(String.format("%n%d %d%n", numRotors(), pawls));
+            for (int i = 0; i < numRotors(); i += 1) {
+                String type = i == 0 ? "R"
+                    : notches[i] == null ? "N" : "M" + notches[i];
+                result.append(String.format("%s %s %s%n",
+                                            name(i), type, cycles[i]));
+            }
+            result.append('*');
+            for (int i = 0; i < numRotors(); i += 1) {
+                result.append(' ').append(name(i));
+            }
+            result.append(' ').append(setting);
+            if (rings != null) {
+                result.append(' ').append(rings);
+            }
+            return result.append(' ').append(plugboard).toString();
+        }
+
+        /** The characters of the alphabet, in order. */
+        final String alphabet;
+        /** Number of pawls. */
+        final int pawls;
+        /** The permutation of the rotor in each slot, as cycles. */
+        final String[] cycles;
+        /** The notches of each moving rotor, or null for the others. */
+        final String[] notches;
+        /** Initial settings of slots 1 and up. */
+        final String setting;
+        /** Ring settings of slots 1 and up, or null if all are 0. */
+        final String rings;
+        /** The plugboard, as cycles. */
+        final String plugboard;
+    }
+
+    /** A deliberately simple model of a machine, against which the
+     *  optimized paths of Machine are checked.  It shares no code with
+     *  them: the permutations are built straight from their cycles, and
+     *  each key press checks every notch and carries as the original
+     *  Machine.convert did, sweeping from the rightmost slot leftward.
+     *  A slot at setting S with ring setting R has its wiring turned by
+     *  S - R. */
+    static final class ReferenceMachine {
+
+        /** A reference machine with configuration CONFIG. */
+        ReferenceMachine(RandomConfig config) {
+            int n = config.numRotors();
+            _size = config.alphabet.length();
+            _forward = new int[n][];
+            _backward = new int[n][_size];
+            _notched = new boolean[n][];
+            _settings = new int[n];
+            _rings = new int[n];
+            for (int i = 0; i < n; i += 1) {
+                _forward[i] = cycleMap(config.cycles[i], config.alphabet);
+                for (int c = 0; c < _size; c += 1) {
+                    _backward[i][_forward[i][c]] = c;
+                }
+                if (config.notches[i] != null) {
+                    _notched[i] = new boolean[_size];
+                    for (char c : config.notches[i].toCharArray()) {
+                        _notched[i][config.alphabet.indexOf(c)] = true;
+                    }
+                }
+                if (i > 0) {
+                    _settings[i] =
+                        config.alphabet.indexOf(config.setting.charAt(i - 1));
+                }
+                if (i > 0 && config.rings != null) {
+                    _rings[i] =
+                        config.alphabet.indexOf(config.rings.charAt(i - 1));
+                }
+            }
+            _plugboard = cycleMap(config.plugboard, config.alphabet);
+        }
+
+        /** Return the conversion of C after a key press. */
+        int convert(int c) {
+            step();
+            return _plugboard[rotors(_plugboard[c])];
+        }
+
+        /** Press a key, and then store in TABLE[C] the conversion of each
+         *  C by the rotors alone. */
+        void press(int[] table) {
+            step();
+            for (int c = 0; c < _size; c += 1) {
+                table[c] = rotors(c);
+            }
+        }
+
+        /** Advance the rotors as for one key press. */
+        void step() {
+            int last = _settings.length - 1;
+            for (int i = last; i > 0; i -= 1) {
+                if (_notched[i] != null && _notched[i][_settings[i]]) {
+                    advance(i - 1);
+                    if (i != last) {
+                        advance(i);
+                    }
+                }
+            }
+            advance(last);
+        }
+
+        /** Return the setting of slot I. */
+        int setting(int i) {
+            return _settings[i];
+        }
+
+        /** Advance the rotor in slot I, if it moves. */
+        private void advance(int i) {
+            if (_notched[i] != null) {
+                _settings[i] = (_settings[i] + 1) % _size;
+            }
+        }
+
+        /** Return the conversion of C by the rotors at their current
+         *  settings. */
+        private int rotors(int c) {
+            for (int i = _settings.length - 1; i >= 0; i -= 1) {
+                c = through(_forward[i], c, _settings[i] - _rings[i]);
+            }
+            for (int i = 1; i < _settings.length; i += 1) {
+                c = through(_backward[i], c, _settings[i] - _rings[i]);
+            }
+            return c;
+        }
+
+        /** Return the conversion of C by MAP turned POSN places. */
+        private int through(int[] map, int c, int posn) {
+            return Math.floorMod(map[Math.floorMod(c + posn, _size)] - posn,
+                                 _size);
+        }
+
+        /** Size of the alphabet. */
+        private final int _size;
+        /** Each slot's permutation, and its inverse. */
+        private final int[][] _forward, _backward;
+        /** Each slot's notches, or null if its rotor does not move. */
+        private final boolean[][] _notched;
+        /** Current setting of each slot. */
+        private final int[] _settings;
+        /** Ring setting of each slot. */
+        private final int[] _rings;
+        /** The plugboard. */
+        private final int[] _plugboard;
+    }
+
+    /** Random alphabets have BYTE_SYMBOLS characters one time in
+     *  BYTE_ODDS, and LARGE_SYMBOLS characters one time in BYTE_ODDS. */
+    private static final int BYTE_ODDS = 8;
+
+    /** Number of characters in a random alphabet too large for rotor
+     *  conversion tables. */
+    private static final int LARGE_SYMBOLS = Rotor.MAX_TABLE_SIZE + 44;
+
+    /** First character of the alphabets of byte machines. */
+    private static final char BYTE_BASE = 0x100;
+
+    /** Largest number of slots in a random configuration. */
+    static final int MAX_RANDOM_ROTORS = 10;
+
+    /** Chances that a given position of a random moving rotor is a
+     *  notch, one of which is chosen for each rotor. */
+    private static final double[] NOTCH_ODDS = { 0.0, 0.05, 0.3, 1.0 };
+
 }
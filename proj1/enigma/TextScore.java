@@ -0,0 +1,123 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** Scores candidate decryptions by how much they look like a language.
+ *  Two measures are provided: the index of coincidence, which needs no
+ *  knowledge of the language, and the log-likelihood of a text's
+ *  n-grams, taken from a table of log probabilities precomputed from a
+ *  sample of the language.  Texts are arrays of character indices, and
+ *  scoring one allocates nothing.
+ *  @author Bryan Lim
+ */
+class TextScore {
+
+    /** Scores for n-grams of length N over ALPHABET, with probabilities
+     *  estimated from the characters of SAMPLE that are in ALPHABET (or
+     *  whose upper-case forms are).  Other characters are skipped.  Every
+     *  n-gram is counted as having been seen at least once, so that none
+     *  is impossible. */
+    TextScore(String sample, int n, Alphabet alphabet) {
+        if (n < 1) {
+            throw error("n-grams must have at least one character");
+        }
+        _alphabet = alphabet;
+        _n = n;
+        int size = alphabet.size();
+        long cells = 1;
+        for (int i = 0; i < n; i += 1) {
+            cells *= size;
+        }
+        if (cells > MAX_TABLE) {
+            throw error("%d-gram table too large for alphabet of %d", n, size);
+        }
+        _table = new float[(int) cells];
+        long[] counts = new long[_table.length];
+        long total = 0;
+        int prefixes = _table.length / size;
+        int index = 0, length = 0;
+        for (int i = 0; i < sample.length(); i += 1) {
+            char c = sample.charAt(i);
+            if (!alphabet.contains(c)) {
+                c = Character.toUpperCase(c);
+                if (!alphabet.contains(c)) {
+                    continue;
+                }
+            }
+            index = index % prefixes * size + alphabet.toInt(c);
+            length += 1;
+            if (length >= n) {
+                counts[index] += 1;
+                total += 1;
+            }
+        }
+        double denominator = Math.log(total + _table.length);
+        for (int i = 0; i < _table.length; i += 1) {
+            _table[i] = (float) (Math.log(counts[i] + 1) - denominator);
+        }
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the length of my n-grams. */
+    int n() {
+        return _n;
+    }
+
+    /** Return the sum of the log probabilities of the n-grams of
+     *  TEXT[0 .. LEN-1]. */
+    double score(int[] text, int len) {
+        int size = _alphabet.size();
+        int prefixes = _table.length / size;
+        int index = 0;
+        double result = 0;
+        for (int i = 0; i < len; i += 1) {
+            index = index % prefixes * size + text[i];
+            if (i >= _n - 1) {
+                result += _table[index];
+            }
+        }
+        return result;
+    }
+
+    /** Return the index of coincidence of TEXT[0 .. LEN-1], whose
+     *  characters are indices less than COUNTS.length: the chance that
+     *  two of its characters chosen at random are the same.  COUNTS is
+     *  used as scratch space. */
+    static double indexOfCoincidence(int[] text, int len, int[] counts) {
+        if (len < 2) {
+            return 0;
+        }
+        for (int c = 0; c < counts.length; c += 1) {
+            counts[c] = 0;
+        }
+        for (int i = 0; i < len; i += 1) {
+            counts[text[i]] += 1;
+        }
+        long pairs = 0;
+        for (int c = 0; c < counts.length; c += 1) {
+            pairs += (long) counts[c] * (counts[c] - 1);
+        }
+        return (double) pairs / ((double) len * (len - 1));
+    }
+
+    /** Largest number of entries in an n-gram table. */
+    static final long MAX_TABLE = 1 << 24;
+
+    /** Alphabet of the texts I score. */
+    private final Alphabet _alphabet;
+
+    /** Length of my n-grams. */
+    private final int _n;
+
+    /** Log probability of each n-gram, the n-gram c1 c2 ... cn being at
+     *  index c1 * size^(n-1) + c2 * size^(n-2) + ... + cn.  The index of
+     *  the n-gram ending at each character of a text is computed from
+     *  that of the n-gram before it by dropping c1 (reducing modulo
+     *  size^(n-1)) before appending the new character, so that it never
+     *  exceeds the table. */
+    private final float[] _table;
+}
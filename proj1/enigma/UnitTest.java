@@ -11,7 +11,13 @@ public class UnitTest {
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
         textui.runClasses(PermutationTest.class, MovingRotorTest.class,
-            MachineTest.class);
+            MachineTest.class, ConfigCacheTest.class, AlphabetTest.class,
+            CribSearchTest.class, BombeTest.class,
+            CiphertextAttackTest.class, EnigmaServiceTest.class,
+            StreamingCipherTest.class, FuzzTest.class,
+            EnigmaServerTest.class, MetricsTest.class,
+            KeystreamCacheTest.class, GroupFormatterTest.class,
+            KeySpaceTest.class, SettingsParserTest.class);
     }
 
 }
@@ -10,9 +10,12 @@ class UpperCaseAlphabet extends Alphabet {
     /** The size of my alphabet. */
     private static final int SIZE = 26;
 
+    /** The characters of my alphabet, in order. */
+    static final String LETTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
     /** A new alphabet containing the upper-case characters in order. */
     UpperCaseAlphabet() {
-        super("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+        super(LETTERS);
     }
 
     /** Returns the size of the alphabet. */